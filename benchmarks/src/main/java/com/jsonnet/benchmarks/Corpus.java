@@ -0,0 +1,237 @@
+package com.jsonnet.benchmarks;
+
+import java.util.Random;
+
+
+// Corpus generates jsonnet inputs of a given shape and size. The generation only depends on the seed, so every run
+// (and every machine) lexes the same text and the numbers of different runs can be compared.
+public final class Corpus {
+  public static final long SEED = 20180101L;
+
+  // Shape is the kind of file to generate, each stresses a different part of the lexer.
+  public enum Shape {
+    // Kubernetes-style manifests: deeply nested objects, short identifiers, field access and small numbers
+    KUBERNETES,
+    // Libraries with doc comments in the three comment styles, functions and conditionals
+    LIBRARY,
+    // Large ||| text blocks embedding scripts and config files
+    TEXT_BLOCK,
+    // Mostly string literals, with escapes, in both quote styles
+    STRING,
+    // Non-ASCII text in strings, comments and text blocks, including runes outside the BMP
+    UNICODE
+  }
+
+  private static final String[] NAMES = {
+      "app", "name", "labels", "metadata", "spec", "replicas", "selector", "template", "containers", "image", "ports",
+      "env", "value", "resources", "limits", "requests", "cpu", "memory", "volumes", "config", "namespace", "port",
+      "protocol", "targetPort", "annotations", "version", "component", "service", "ingress", "host", "path", "backend"};
+  private static final String[] WORDS = {
+      "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "config", "cluster", "deploy", "release", "build",
+      "stage", "production", "canary", "default", "value", "returns", "object", "field", "array", "when", "given"};
+  private static final String[] UNICODE_WORDS = {
+      "héllo", "wörld", "naïve", "façade", "Ελληνικά", "русский", "日本語", "中文", "한국어", "עברית", "العربية",
+      "हिन्दी", "ไทย", "emoji 🚀", "🎉🎉", "𝔘𝔫𝔦𝔠𝔬𝔡𝔢", "Zürich", "São Paulo", "Kraków", "Ørsted"};
+
+  private final Shape shape;
+  private final Random random;
+  private final StringBuilder out;
+
+  private Corpus(Shape shape, long seed, int size) {
+    this.shape = shape;
+    this.random = new Random(seed);
+    this.out = new StringBuilder(size + 4096);
+  }
+
+  // generate returns a file of the given shape of at least size chars, generated from seed.
+  public static String generate(Shape shape, int size, long seed) {
+    return new Corpus(shape, seed, size).generate(size);
+  }
+
+  public static String generate(Shape shape, int size) {
+    return generate(shape, size, SEED);
+  }
+
+  // textBlocks returns a file of the given number of ||| text blocks, each of the given number of lines.
+  public static String textBlocks(int blocks, int lines, long seed) {
+    Corpus corpus = new Corpus(Shape.TEXT_BLOCK, seed, blocks * lines * 40);
+    corpus.out.append("// text blocks of ").append(lines).append(" lines, generated\n[\n");
+    for (int i = 0; i < blocks; i++) {
+      corpus.textBlock(corpus.indent(), lines);
+      corpus.out.append(",\n");
+    }
+    return corpus.out.append("]\n").toString();
+  }
+
+  private String generate(int size) {
+    this.out.append("// ").append(this.shape.name().toLowerCase()).append(" corpus, generated\n");
+    this.out.append("local lib = import 'lib.libsonnet';\n[\n");
+    while (this.out.length() < size) {
+      switch (this.shape) {
+        case KUBERNETES:
+          this.manifest();
+          break;
+        case LIBRARY:
+          this.library();
+          break;
+        case TEXT_BLOCK:
+          this.textBlock(this.indent(), 5 + this.random.nextInt(40));
+          break;
+        case STRING:
+          this.strings();
+          break;
+        case UNICODE:
+          this.unicode();
+          break;
+        default:
+          throw new IllegalStateException(this.shape.name());
+      }
+      this.out.append(",\n");
+    }
+    return this.out.append("]\n").toString();
+  }
+
+  private void manifest() {
+    String name = this.name();
+    this.out.append("  {\n");
+    this.out.append("    apiVersion: 'apps/v1',\n    kind: 'Deployment',\n");
+    this.out.append("    metadata: { name: '").append(name).append("', namespace: lib.namespace, labels: { app: '")
+        .append(name).append("', tier: '").append(this.word()).append("' } },\n");
+    this.out.append("    spec: {\n      replicas: ").append(1 + this.random.nextInt(9)).append(",\n");
+    this.out.append("      selector: { matchLabels: $.metadata.labels },\n");
+    this.out.append("      template: {\n        metadata: { labels: $.metadata.labels },\n");
+    this.out.append("        spec: {\n          containers: [\n");
+    int containers = 1 + this.random.nextInt(3);
+    for (int c = 0; c < containers; c++) {
+      this.out.append("            {\n");
+      this.out.append("              name: '").append(this.name()).append("',\n");
+      this.out.append("              image: 'registry.example.com/").append(name).append(':')
+          .append(this.random.nextInt(20)).append('.').append(this.random.nextInt(100)).append("',\n");
+      this.out.append("              ports: [{ containerPort: ").append(8000 + this.random.nextInt(1000))
+          .append(", protocol: 'TCP' }],\n");
+      this.out.append("              env: [\n");
+      int env = this.random.nextInt(5);
+      for (int e = 0; e < env; e++) {
+        this.out.append("                { name: '").append(this.name().toUpperCase()).append("', value: std.toString(")
+            .append(this.random.nextInt(1000)).append(") },\n");
+      }
+      this.out.append("              ],\n");
+      this.out.append("              resources: { limits: { cpu: '").append(100 * (1 + this.random.nextInt(20)))
+          .append("m', memory: '").append(64 << this.random.nextInt(5)).append("Mi' } },\n");
+      this.out.append("            } + lib.probes(").append(this.random.nextInt(60)).append(", ")
+          .append(this.random.nextDouble() < 0.5 ? "true" : "false").append("),\n");
+    }
+    this.out.append("          ],\n        },\n      },\n    },\n  }");
+  }
+
+  private void library() {
+    String name = this.name();
+    this.out.append("  // ").append(this.sentence()).append('\n');
+    this.out.append("  // ").append(this.sentence()).append('\n');
+    this.out.append("  /*\n");
+    for (int i = 0, lines = 1 + this.random.nextInt(4); i < lines; i++) {
+      this.out.append("   * ").append(this.sentence()).append('\n');
+    }
+    this.out.append("   */\n");
+    this.out.append("  {\n");
+    this.out.append("    # ").append(this.sentence()).append('\n');
+    this.out.append("    ").append(name).append("(").append(this.name()).append(", ").append(this.name())
+        .append("=null, ").append(this.name()).append("={})::\n");
+    this.out.append("      local self_ = self;  // ").append(this.word()).append('\n');
+    this.out.append("      if std.isString(").append(name).append(") then\n");
+    this.out.append("        { value: ").append(name).append(" }  # ").append(this.sentence()).append('\n');
+    this.out.append("      else if ").append(this.random.nextInt(100)).append(" >= ").append(this.random.nextInt(100))
+        .append(" && !self_.").append(this.name()).append(" then\n");
+    this.out.append("        error 'invalid ").append(name).append("'\n");
+    this.out.append("      else\n");
+    this.out.append("        [x * ").append(this.random.nextInt(10)).append(" for x in std.range(0, ")
+        .append(this.random.nextInt(100)).append(") if x % 2 == 0],  /* ").append(this.word()).append(" */\n");
+    this.out.append("  }");
+  }
+
+  private void textBlock(String indent, int lines) {
+    this.out.append("  {\n    name: '").append(this.name()).append("',\n    script: |||\n");
+    this.out.append(indent).append("#!/bin/sh\n");
+    for (int i = 0; i < lines; i++) {
+      this.out.append(indent);
+      // The first line sets the indent of the block, later lines may be indented further
+      for (int depth = this.random.nextInt(4); depth > 0; depth--) {
+        this.out.append("  ");
+      }
+      switch (this.random.nextInt(4)) {
+        case 0:
+          this.out.append("echo \"").append(this.sentence()).append("\"\n");
+          break;
+        case 1:
+          this.out.append(this.name()).append(" = ").append(this.random.nextInt(10000)).append('\n');
+          break;
+        case 2:
+          this.out.append("if [ -f /etc/").append(this.name()).append(" ]; then exit 1; fi\n");
+          break;
+        default:
+          this.out.append('\n');
+      }
+    }
+    this.out.append("    |||,\n  }");
+  }
+
+  private void strings() {
+    this.out.append("  [");
+    for (int i = 0, n = 4 + this.random.nextInt(12); i < n; i++) {
+      if (i > 0) {
+        this.out.append(", ");
+      }
+      if (this.random.nextBoolean()) {
+        this.out.append('"').append(this.sentence());
+        if (this.random.nextInt(3) == 0) {
+          this.out.append("\\n\\t\\\"").append(this.word()).append("\\\"\\u00e9");
+        }
+        this.out.append('"');
+      } else {
+        this.out.append('\'').append(this.sentence());
+        if (this.random.nextInt(3) == 0) {
+          this.out.append("\\\\").append(this.word()).append("\\'s");
+        }
+        this.out.append('\'');
+      }
+    }
+    this.out.append("]");
+  }
+
+  private void unicode() {
+    this.out.append("  // ").append(this.unicodeWord()).append(' ').append(this.unicodeWord()).append('\n');
+    this.out.append("  {\n    ").append(this.name()).append(": '").append(this.unicodeWord()).append(' ')
+        .append(this.unicodeWord()).append("',\n");
+    this.out.append("    '").append(this.unicodeWord()).append("': \"").append(this.unicodeWord()).append("\",\n");
+    this.out.append("    /* ").append(this.unicodeWord()).append(" */ note: |||\n");
+    for (int i = 0, lines = 1 + this.random.nextInt(4); i < lines; i++) {
+      this.out.append("      ").append(this.unicodeWord()).append(' ').append(this.unicodeWord()).append('\n');
+    }
+    this.out.append("    |||,\n  }");
+  }
+
+  private String indent() {
+    return this.random.nextBoolean() ? "      " : "\t\t";
+  }
+
+  private String name() {
+    String name = NAMES[this.random.nextInt(NAMES.length)];
+    return this.random.nextInt(4) == 0 ? name + this.random.nextInt(10) : name;
+  }
+
+  private String word() {
+    return WORDS[this.random.nextInt(WORDS.length)];
+  }
+
+  private String unicodeWord() {
+    return UNICODE_WORDS[this.random.nextInt(UNICODE_WORDS.length)];
+  }
+
+  private String sentence() {
+    StringBuilder sb = new StringBuilder(this.word());
+    for (int i = 0, n = 3 + this.random.nextInt(8); i < n; i++) {
+      sb.append(' ').append(this.word());
+    }
+    return sb.toString();
+  }
+}
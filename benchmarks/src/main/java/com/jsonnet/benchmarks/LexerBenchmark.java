@@ -0,0 +1,154 @@
+package com.jsonnet.benchmarks;
+
+import com.jsonnet.lexer.Lexer;
+import com.jsonnet.lexer.Token;
+import com.jsonnet.lexer.TokenBuffer;
+import com.jsonnet.lexer.TokenKind;
+import java.io.StringReader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+// LexerBenchmark measures how fast the lexer goes through each shape of corpus. Besides the operations per second,
+// JMH reports the megabytes (of UTF-8 input) and tokens lexed per second. Run it with -prof gc to get the allocation
+// per operation, or run Report to get the allocation per token directly.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class LexerBenchmark {
+  @Param({"KUBERNETES", "LIBRARY", "TEXT_BLOCK", "STRING", "UNICODE"})
+  public Corpus.Shape shape;
+
+  @Param({"1048576"})
+  public int size;
+
+  String input;
+  ByteBuffer utf8;
+  double megabytes; // Size of the UTF-8 input in MB
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.input = Corpus.generate(this.shape, this.size);
+    byte[] bytes = this.input.getBytes(StandardCharsets.UTF_8);
+    this.utf8 = ByteBuffer.allocateDirect(bytes.length);
+    ((Buffer) this.utf8.put(bytes)).flip(); // Through Buffer, ByteBuffer.flip() is only there from Java 9 on
+    this.megabytes = bytes.length / 1e6;
+  }
+
+  // Counters are reported by JMH as rates, i.e. megabytes/s and tokens/s.
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Counters {
+    public double megabytes;
+    public double tokens;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      this.megabytes = 0;
+      this.tokens = 0;
+    }
+  }
+
+  // lex lexes the input as a String into a list of tokens.
+  @Benchmark
+  public List<Token> lex(Counters counters) {
+    List<Token> tokens = new Lexer("bench", this.input).lex();
+    counters.megabytes += this.megabytes;
+    counters.tokens += tokens.size();
+    return tokens;
+  }
+
+  // lexValues lexes the input as a String and asks for the value of every token, i.e. string literals decoded.
+  @Benchmark
+  public int lexValues(Counters counters) {
+    List<Token> tokens = new Lexer("bench", this.input).lex();
+    int length = 0;
+    for (Token t : tokens) {
+      length += t.getValue().length();
+    }
+    counters.megabytes += this.megabytes;
+    counters.tokens += tokens.size();
+    return length;
+  }
+
+  // lexNumbers lexes the input into a TokenBuffer and works out the value of every number literal.
+  @Benchmark
+  public double lexNumbers(Counters counters) {
+    TokenBuffer tokens = new Lexer("bench", this.input).lexToBuffer();
+    double sum = 0;
+    for (TokenBuffer.Cursor c = tokens.cursor(); c.isValid(); c.next()) {
+      if (c.kind() == TokenKind.tokenNumber) {
+        sum += c.number();
+      }
+    }
+    counters.megabytes += this.megabytes;
+    counters.tokens += tokens.size();
+    return sum;
+  }
+
+  // lexNumbersParseDouble is lexNumbers with the values worked out by Double.parseDouble, for comparison.
+  @Benchmark
+  public double lexNumbersParseDouble(Counters counters) {
+    TokenBuffer tokens = new Lexer("bench", this.input).lexToBuffer();
+    double sum = 0;
+    for (TokenBuffer.Cursor c = tokens.cursor(); c.isValid(); c.next()) {
+      if (c.kind() == TokenKind.tokenNumber) {
+        sum += Double.parseDouble(c.data());
+      }
+    }
+    counters.megabytes += this.megabytes;
+    counters.tokens += tokens.size();
+    return sum;
+  }
+
+  // lexUtf8 lexes the input as UTF-8 bytes out of the heap, as a memory-mapped file would be.
+  @Benchmark
+  public List<Token> lexUtf8(Counters counters) {
+    List<Token> tokens = new Lexer("bench", this.utf8.duplicate()).lex();
+    counters.megabytes += this.megabytes;
+    counters.tokens += tokens.size();
+    return tokens;
+  }
+
+  // lexReader lexes the input read through a Reader, pulling the tokens one at a time without keeping them, as a tool
+  // going over an input too large to hold would.
+  @Benchmark
+  public int lexReader(Counters counters) {
+    Lexer lexer = new Lexer("bench", new StringReader(this.input));
+    int tokens = 0;
+    for (Token t = lexer.nextToken(); t != null; t = lexer.nextToken()) {
+      tokens++;
+    }
+    counters.megabytes += this.megabytes;
+    counters.tokens += tokens;
+    return tokens;
+  }
+
+  // lexToBuffer lexes the input as a String into a TokenBuffer.
+  @Benchmark
+  public TokenBuffer lexToBuffer(Counters counters) {
+    TokenBuffer tokens = new Lexer("bench", this.input).lexToBuffer();
+    counters.megabytes += this.megabytes;
+    counters.tokens += tokens.size();
+    return tokens;
+  }
+}
@@ -0,0 +1,70 @@
+package com.jsonnet.benchmarks;
+
+import com.jsonnet.lexer.Lexer;
+import com.jsonnet.lexer.Token;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+// LexerScalingBenchmark lexes inputs of the same shape from 1 KB to 50 MB. The megabytes lexed per second should stay
+// flat as the input grows: a drop on the large inputs points at work which is not linear in the size of the input.
+// The heap is large enough to hold the token list of the largest input.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class LexerScalingBenchmark {
+  @Param({"1024", "10240", "102400", "1048576", "10485760", "52428800"})
+  public int size;
+
+  @Param({"KUBERNETES"})
+  public Corpus.Shape shape;
+
+  String input;
+  double megabytes; // Size of the UTF-8 input in MB
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.input = Corpus.generate(this.shape, this.size);
+    this.megabytes = this.input.getBytes(StandardCharsets.UTF_8).length / 1e6;
+  }
+
+  // Counters are reported by JMH as rates, i.e. megabytes/s and tokens/s.
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Counters {
+    public double megabytes;
+    public double tokens;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      this.megabytes = 0;
+      this.tokens = 0;
+    }
+  }
+
+  // lex lexes the input as a String into a list of tokens.
+  @Benchmark
+  public List<Token> lex(Counters counters) {
+    List<Token> tokens = new Lexer("bench", this.input).lex();
+    counters.megabytes += this.megabytes;
+    counters.tokens += tokens.size();
+    return tokens;
+  }
+}
@@ -0,0 +1,65 @@
+package com.jsonnet.benchmarks;
+
+import com.jsonnet.lexer.Lexer;
+import com.jsonnet.lexer.LexerOptions;
+import com.jsonnet.lexer.LexerStats;
+import com.jsonnet.lexer.Token;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+// ListenerBenchmark measures the cost of the instrumentation of the lexer: none is the lexer as it runs by default,
+// listener gathers the statistics of every file for a LexerListener. Run it with -jvmArgsAppend
+// -XX:StartFlightRecording to see the cost of the jsonnet.Lex events as well.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ListenerBenchmark {
+  @Param({"none", "listener"})
+  public String instrumentation;
+
+  @Param({"KUBERNETES", "LIBRARY"})
+  public Corpus.Shape shape;
+
+  // The size of a typical file, the per-file costs of the instrumentation matter as much as the per-token ones
+  @Param({"16384", "1048576"})
+  public int size;
+
+  String input;
+  LexerOptions options;
+  long tokens; // Sink for the statistics, so that they are not optimized away
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.input = Corpus.generate(this.shape, this.size);
+    LexerOptions.Builder builder = LexerOptions.builder();
+    if (this.instrumentation.equals("listener")) {
+      builder.listener(this::lexed);
+    }
+    this.options = builder.build();
+  }
+
+  private void lexed(LexerStats stats) {
+    this.tokens += stats.tokens();
+  }
+
+  @Benchmark
+  public List<Token> lex() {
+    return new Lexer("bench", this.input, this.options).lex();
+  }
+}
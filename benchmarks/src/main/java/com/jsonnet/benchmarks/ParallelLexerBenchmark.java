@@ -0,0 +1,69 @@
+package com.jsonnet.benchmarks;
+
+import com.jsonnet.lexer.Lexer;
+import com.jsonnet.lexer.LexerOptions;
+import com.jsonnet.lexer.ParallelLexer;
+import com.jsonnet.lexer.Token;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+// ParallelLexerBenchmark measures how the time to lex one large file scales with the number of threads of the pool,
+// against the sequential lexer.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ParallelLexerBenchmark {
+  @Param({"KUBERNETES", "TEXT_BLOCK"})
+  public Corpus.Shape shape;
+
+  @Param({"33554432"})
+  public int size;
+
+  @Param({"1", "2", "4", "8", "16"})
+  public int threads;
+
+  @Param({"262144"})
+  public int chunkSize;
+
+  String input;
+  ForkJoinPool pool;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.input = Corpus.generate(this.shape, this.size);
+    this.pool = new ForkJoinPool(this.threads);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.pool.shutdown();
+  }
+
+  @Benchmark
+  public List<Token> sequential() {
+    return new Lexer("bench", this.input).lex();
+  }
+
+  @Benchmark
+  public List<Token> parallel() {
+    return new ParallelLexer("bench", this.input, LexerOptions.DEFAULT, this.chunkSize).lex(this.pool);
+  }
+}
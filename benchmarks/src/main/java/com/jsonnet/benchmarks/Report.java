@@ -0,0 +1,42 @@
+package com.jsonnet.benchmarks;
+
+import com.jsonnet.lexer.Lexer;
+import java.util.Collection;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+// Report runs LexerBenchmark with the GC profiler and prints, for every benchmark and shape, the throughput in MB/s
+// and the bytes allocated per token. Arguments, if any, are regular expressions selecting the benchmarks to run, e.g.
+//   java -cp target/benchmarks.jar com.jsonnet.benchmarks.Report 'LexerBenchmark.lex$'
+public class Report {
+  public static void main(String[] args) throws RunnerException {
+    OptionsBuilder builder = new OptionsBuilder();
+    if (args.length == 0) {
+      builder.include(LexerBenchmark.class.getSimpleName());
+    }
+    for (String arg : args) {
+      builder.include(arg);
+    }
+    Options options = builder.addProfiler(GCProfiler.class).build();
+    Collection<RunResult> results = new Runner(options).run();
+
+    System.out.printf("%n%-14s %-12s %10s %10s %12s%n", "benchmark", "shape", "size", "MB/s", "bytes/token");
+    for (RunResult result : results) {
+      String benchmark = result.getParams().getBenchmark();
+      Corpus.Shape shape = Corpus.Shape.valueOf(result.getParams().getParam("shape"));
+      int size = Integer.parseInt(result.getParams().getParam("size"));
+      // The corpus is deterministic, so the number of tokens of an operation can be counted again here
+      int tokens = new Lexer("report", Corpus.generate(shape, size)).lex().size();
+      Result megabytes = result.getSecondaryResults().get("megabytes");
+      Result allocated = result.getSecondaryResults().get("gc.alloc.rate.norm");
+      System.out.printf("%-14s %-12s %10d %10.1f %12.1f%n", benchmark.substring(benchmark.lastIndexOf('.') + 1), shape,
+          size, megabytes.getScore(), allocated.getScore() / tokens);
+    }
+  }
+}
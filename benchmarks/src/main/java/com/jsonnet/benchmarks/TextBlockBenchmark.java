@@ -0,0 +1,61 @@
+package com.jsonnet.benchmarks;
+
+import com.jsonnet.lexer.Lexer;
+import com.jsonnet.lexer.Token;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+// TextBlockBenchmark measures the lexing of a file made of many large ||| text blocks. The file holds about the same
+// number of lines whatever the size of its blocks, so the time per line of a block can be compared across sizes.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class TextBlockBenchmark {
+  @Param({"10", "1000", "10000"})
+  public int linesPerBlock;
+
+  @Param({"100000"})
+  public int lines;
+
+  String input;
+  ByteBuffer utf8;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.input = Corpus.textBlocks(Math.max(1, this.lines / this.linesPerBlock), this.linesPerBlock, Corpus.SEED);
+    byte[] bytes = this.input.getBytes(StandardCharsets.UTF_8);
+    this.utf8 = ByteBuffer.allocateDirect(bytes.length);
+    ((Buffer) this.utf8.put(bytes)).flip(); // Through Buffer, ByteBuffer.flip() is only there from Java 9 on
+  }
+
+  // lex lexes the input as a String.
+  @Benchmark
+  public List<Token> lex() {
+    return new Lexer("bench", this.input).lex();
+  }
+
+  // lexUtf8 lexes the input as UTF-8 bytes out of the heap.
+  @Benchmark
+  public List<Token> lexUtf8() {
+    return new Lexer("bench", this.utf8.duplicate()).lex();
+  }
+}
@@ -0,0 +1,98 @@
+package com.jsonnet.benchmarks;
+
+import com.jsonnet.lexer.Lexer;
+import com.jsonnet.lexer.LexerOptions;
+import com.jsonnet.lexer.TokenBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+// TokenMemoryBenchmark compares the heap retained by a lexed file as a List<Token>, as a List<Token> without fodder
+// and as a TokenBuffer. Each operation lexes the file once and reports the used heap after a full GC, before and after
+// lexing, as the retained and bytesPerToken counters; the time of the operation includes the GCs and means little.
+// There is a single measured operation per fork, so that the counters are the ones of that operation.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(value = 3, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class TokenMemoryBenchmark {
+  @Param({"KUBERNETES", "LIBRARY", "TEXT_BLOCK", "STRING", "UNICODE"})
+  public Corpus.Shape shape;
+
+  @Param({"20971520"})
+  public int size;
+
+  String input;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.input = Corpus.generate(this.shape, this.size);
+  }
+
+  // Counters are reported by JMH as they are, i.e. in bytes.
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Counters {
+    public double retained;
+    public double bytesPerToken;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      this.retained = 0;
+      this.bytesPerToken = 0;
+    }
+  }
+
+  static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  // list keeps the tokens as a List<Token>, with their fodder.
+  @Benchmark
+  public List<?> list(Counters counters) {
+    long before = usedHeap();
+    List<?> tokens = new Lexer("bench", this.input).lex();
+    counters.retained = usedHeap() - before;
+    counters.bytesPerToken = counters.retained / tokens.size();
+    return tokens;
+  }
+
+  // listNoFodder keeps the tokens as a List<Token>, lexed without their fodder as for an evaluation.
+  @Benchmark
+  public List<?> listNoFodder(Counters counters) {
+    long before = usedHeap();
+    List<?> tokens = new Lexer("bench", this.input, LexerOptions.EVALUATION).lex();
+    counters.retained = usedHeap() - before;
+    counters.bytesPerToken = counters.retained / tokens.size();
+    return tokens;
+  }
+
+  // buffer keeps the tokens in a TokenBuffer.
+  @Benchmark
+  public TokenBuffer buffer(Counters counters) {
+    long before = usedHeap();
+    TokenBuffer tokens = new Lexer("bench", this.input).lexToBuffer();
+    counters.retained = usedHeap() - before;
+    counters.bytesPerToken = counters.retained / tokens.size();
+    return tokens;
+  }
+}
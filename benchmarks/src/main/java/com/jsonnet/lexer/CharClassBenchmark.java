@@ -0,0 +1,115 @@
+package com.jsonnet.lexer;
+
+import com.google.common.collect.ImmutableSet;
+import com.jsonnet.benchmarks.Corpus;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+// CharClassBenchmark compares the CharClass table lookups with the Character based helpers the lexer used before, by
+// classifying every rune of a corpus the way the lexer dispatch does. It is in the package of the lexer, as CharClass
+// is not public.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CharClassBenchmark {
+  @Param({"KUBERNETES", "UNICODE"})
+  public Corpus.Shape shape;
+
+  @Param({"4194304"})
+  public int size;
+
+  int[] runes;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.runes = Corpus.generate(this.shape, this.size).codePoints().toArray();
+  }
+
+  // Counters are reported by JMH as rates, i.e. runes/s.
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Counters {
+    public double runes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      this.runes = 0;
+    }
+  }
+
+  static boolean legacyIsDigit(int rune) {
+    return Character.isDigit(rune);
+  }
+
+  static boolean legacyIsIdentifierFirst(int rune) {
+    return Character.isUpperCase(rune) || Character.isLowerCase(rune) || rune == '_';
+  }
+
+  static boolean legacyIsIdentifier(int rune) {
+    return legacyIsIdentifierFirst(rune) || legacyIsDigit(rune);
+  }
+
+  static boolean legacyIsSymbol(int rune) {
+    return ImmutableSet.of('!', '$', ':', '~', '+', '-', '&', '|', '^', '=', '<', '>', '*', '/', '%', '#')
+        .contains((char) rune);
+  }
+
+  static boolean legacyIsWhitespace(int rune) {
+    return rune == '\n' || rune == ' ' || rune == '\t' || rune == '\r';
+  }
+
+  // legacy classifies the runes with the Character based helpers.
+  @Benchmark
+  public int legacy(Counters counters) {
+    int n = 0;
+    for (int rune : this.runes) {
+      if (legacyIsWhitespace(rune)) {
+        n += 1;
+      } else if (legacyIsDigit(rune)) {
+        n += 2;
+      } else if (legacyIsIdentifier(rune)) {
+        n += 3;
+      } else if (legacyIsSymbol(rune)) {
+        n += 4;
+      }
+    }
+    counters.runes += this.runes.length;
+    return n;
+  }
+
+  // table classifies the runes with CharClass.
+  @Benchmark
+  public int table(Counters counters) {
+    int n = 0;
+    for (int rune : this.runes) {
+      int cls = CharClass.of(rune);
+      if ((cls & CharClass.whitespace) != 0) {
+        n += 1;
+      } else if ((cls & CharClass.digit) != 0) {
+        n += 2;
+      } else if ((cls & CharClass.identifier) != 0) {
+        n += 3;
+      } else if ((cls & CharClass.symbol) != 0) {
+        n += 4;
+      }
+    }
+    counters.runes += this.runes.length;
+    return n;
+  }
+}
@@ -0,0 +1,47 @@
+package com.jsonnet.lexer;
+
+// CharClass classifies runes for the lexer with a table precomputed for the ASCII range. Jsonnet syntax is pure ASCII,
+// so any other rune (and lexEOF) belongs to no class and only ever appears inside strings and comments.
+final class CharClass {
+  static final int horizontalWhitespace = 1; // ' ', '\t' and '\r'
+  static final int newLine = 1 << 1; // '\n'
+  static final int digit = 1 << 2; // '0' to '9'
+  static final int identifierFirst = 1 << 3; // 'a' to 'z', 'A' to 'Z' and '_'
+  static final int identifier = 1 << 4; // identifierFirst and digit
+  static final int symbol = 1 << 5; // runes operators are made of
+  static final int sign = 1 << 6; // '+' and '-'
+  static final int exponent = 1 << 7; // 'e' and 'E'
+
+  static final int whitespace = horizontalWhitespace | newLine;
+
+  private static final int[] classes = new int[128];
+
+  static {
+    mark(horizontalWhitespace, " \t\r");
+    mark(newLine, "\n");
+    mark(digit | identifier, "0123456789");
+    mark(identifierFirst | identifier, "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_");
+    mark(symbol, "!$:~+-&|^=<>*/%#");
+    mark(sign, "+-");
+    mark(exponent, "eE");
+  }
+
+  private CharClass() {
+  }
+
+  private static void mark(int cls, String chars) {
+    for (int i = 0; i < chars.length(); i++) {
+      classes[chars.charAt(i)] |= cls;
+    }
+  }
+
+  // of returns the classes of rune as a bit set, it is empty for runes outside of the ASCII range.
+  static int of(int rune) {
+    return (rune & ~0x7F) == 0 ? classes[rune] : 0;
+  }
+
+  // is returns whether rune belongs to any of the classes cls.
+  static boolean is(int rune, int cls) {
+    return (of(rune) & cls) != 0;
+  }
+}
@@ -0,0 +1,47 @@
+package com.jsonnet.lexer;
+
+// CharSequenceSource is a source backed by any CharSequence (e.g. a StringBuilder or a CharBuffer), its code units are
+// UTF-16 chars. The chars are read in place, the sequence is never copied as a whole. It must not change while it is
+// being lexed, or while the data of its tokens has not been asked for.
+class CharSequenceSource extends Source {
+  final CharSequence input;
+
+  CharSequenceSource(CharSequence input) {
+    this.input = input;
+  }
+
+  @Override
+  int length() {
+    return this.input.length();
+  }
+
+  @Override
+  int unitAt(int offset) {
+    return this.input.charAt(offset);
+  }
+
+  @Override
+  int runeAt(int offset) {
+    return Character.codePointAt(this.input, offset);
+  }
+
+  @Override
+  int runeLength(int offset) {
+    // Only a well formed surrogate pair makes up a rune of two chars, a lone surrogate is a rune on its own.
+    if (Character.isHighSurrogate(this.input.charAt(offset)) && offset + 1 < this.input.length()
+        && Character.isLowSurrogate(this.input.charAt(offset + 1))) {
+      return 2;
+    }
+    return 1;
+  }
+
+  @Override
+  String slice(int start, int end) {
+    return this.input.subSequence(start, end).toString();
+  }
+
+  @Override
+  void appendTo(StringBuilder sb, int start, int end) {
+    sb.append(this.input, start, end);
+  }
+}
@@ -0,0 +1,97 @@
+package com.jsonnet.lexer;
+
+import com.jsonnet.lexer.fodder.FodderElement;
+import com.jsonnet.lexer.fodder.FodderKind;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+// FodderTable is a side table of fodder elements, each stored as its kind and the range of its data in the source.
+// Tokens refer to their fodder as a run of consecutive elements of a table, and FodderElement objects (and their
+// data Strings) are only created when the fodder of a token is asked for.
+//
+// A lexer fills one table after the other, each of them up to a fixed capacity, so that the fodder of tokens which are
+// not referenced anymore can be garbage collected while the lexer carries on.
+final class FodderTable {
+  static final int capacity = 1024;
+  private static final FodderKind[] fodderKinds = FodderKind.values();
+
+  Source source; // The source the fodder data is sliced from
+  private byte[] kinds = new byte[16]; // FodderKind ordinal of each element
+  private int[] starts = new int[16]; // Start offset of the data of each element
+  private int[] ends = new int[16]; // End offset (exclusive) of the data of each element
+  private int size;
+
+  FodderTable(Source source) {
+    this.source = source;
+  }
+
+  int size() {
+    return this.size;
+  }
+
+  // isFull returns whether the table reached its capacity. It can still grow past it, e.g. if a single token has more
+  // fodder elements than that.
+  boolean isFull() {
+    return this.size >= capacity;
+  }
+
+  void add(FodderKind kind, int start, int end) {
+    if (this.size == this.kinds.length) {
+      this.kinds = Arrays.copyOf(this.kinds, this.size * 2);
+      this.starts = Arrays.copyOf(this.starts, this.size * 2);
+      this.ends = Arrays.copyOf(this.ends, this.size * 2);
+    }
+    this.kinds[this.size] = (byte) kind.ordinal();
+    this.starts[this.size] = start;
+    this.ends[this.size] = end;
+    this.size++;
+  }
+
+  // clear removes all the elements, for a lexer whose tokens have taken their fodder out of the table.
+  void clear() {
+    this.size = 0;
+  }
+
+  // reset empties the table for another source, reusing its arrays unless they grew past the capacity of a table.
+  void reset(Source source) {
+    this.source = source;
+    this.size = 0;
+    if (this.kinds.length > capacity) {
+      this.kinds = new byte[16];
+      this.starts = new int[16];
+      this.ends = new int[16];
+    }
+  }
+
+  // extendLast extends the data of the last element up to end.
+  void extendLast(int end) {
+    this.ends[this.size - 1] = end;
+  }
+
+  FodderKind kind(int i) {
+    return fodderKinds[this.kinds[i]];
+  }
+
+  int start(int i) {
+    return this.starts[i];
+  }
+
+  int end(int i) {
+    return this.ends[i];
+  }
+
+  FodderElement element(int i) {
+    return new FodderElement(this.kind(i), this.source.slice(this.starts[i], this.ends[i]));
+  }
+
+  // elements builds the FodderElements of the count elements starting at from.
+  List<FodderElement> elements(int from, int count) {
+    List<FodderElement> elements = new ArrayList<>(count);
+    for (int i = from; i < from + count; i++) {
+      elements.add(this.element(i));
+    }
+    return elements;
+  }
+}
@@ -0,0 +1,91 @@
+package com.jsonnet.lexer;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+
+// IdentifierTable resolves identifiers of a source to shared String instances. Lookups hash and compare the source
+// range in place, so an identifier that was seen before in the file costs no allocation. New identifiers go through an
+// interner shared by all lexers, so that the same name lexed from different files is also a single String.
+//
+// A lexer which is reset for another file keeps its table, with the identifiers of the previous files in it.
+final class IdentifierTable {
+  // Names interned by any lexer. It only holds weak references, names no token refers to anymore can be collected.
+  private static final Interner<String> shared = Interners.newWeakInterner();
+  // A table is trimmed back when it is reset past this many slots, so that a lexer which is reused does not hold on
+  // to the table of the largest file it ever lexed.
+  static final int maxRetainedSlots = 4096;
+
+  private Source source;
+  private String[] names = new String[64]; // Open addressing hash table of the identifiers of the source
+  private int[] hashes = new int[64]; // String.hashCode() of the identifier in each slot of names
+  private int size;
+
+  IdentifierTable(Source source) {
+    this.source = source;
+  }
+
+  // reset moves the table to the identifiers of source. The names already in the table are kept, as they are compared
+  // to the source in place: identifiers that are common to many files (e.g. std or local names of a library) cost no
+  // allocation in any of them. The table is emptied once it grew too large.
+  void reset(Source source) {
+    this.source = source;
+    if (this.names.length > maxRetainedSlots) {
+      this.names = new String[64];
+      this.hashes = new int[64];
+      this.size = 0;
+    }
+  }
+
+  // capacity returns the number of slots of the table.
+  int capacity() {
+    return this.names.length;
+  }
+
+  // intern returns the identifier between the offsets start (inclusive) and end (exclusive) of the source. Identifiers
+  // are ASCII, so a code unit of the source is a char of the identifier whatever the encoding of the source.
+  String intern(int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + this.source.unitAt(i);
+    }
+    int mask = this.names.length - 1;
+    int slot = spread(hash) & mask;
+    for (String name = this.names[slot]; name != null; name = this.names[slot]) {
+      if (this.hashes[slot] == hash && name.length() == end - start && this.source.startsWith(name, start)) {
+        return name;
+      }
+      slot = (slot + 1) & mask;
+    }
+    String name = shared.intern(this.source.slice(start, end));
+    this.names[slot] = name;
+    this.hashes[slot] = hash;
+    if (++this.size * 2 > this.names.length) {
+      this.grow();
+    }
+    return name;
+  }
+
+  private void grow() {
+    String[] names = this.names;
+    int[] hashes = this.hashes;
+    this.names = new String[names.length * 2];
+    this.hashes = new int[names.length * 2];
+    int mask = this.names.length - 1;
+    for (int i = 0; i < names.length; i++) {
+      if (names[i] != null) {
+        int slot = spread(hashes[i]) & mask;
+        while (this.names[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        this.names[slot] = names[i];
+        this.hashes[slot] = hashes[i];
+      }
+    }
+  }
+
+  // spread mixes the high bits of the hash into the low ones, which are the only ones used to pick a slot.
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,220 @@
+package com.jsonnet.lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+// ---------------------------------------------------------------------------------------------------------------------
+// IncrementalLexer keeps the tokens of a file up to date as the file is edited, e.g. in an editor. An edit is re-lexed
+// from the end of the last token before it, which is a point where the lexer holds no state, and only until the new
+// tokens end at the same place as old tokens after the edit. From there on the old tokens are kept, their locations
+// shifted. Multi-line tokens (comments, text blocks, strings) need no special care: a comment that an edit opens or
+// closes simply keeps the re-lexing going until the token ends line up again, possibly at the end of the file.
+//
+// Offsets of edits are in chars of the text. Tokens hold their data and fodder directly, so that they don't keep old
+// versions of the text alive. Tokens which are kept by an edit are the same objects, updated in place.
+//
+// A text being edited often does not lex for a while, e.g. while a string is being typed. The tokens of the last text
+// which did lex are then kept, along with the part of it edited since, and the next edit is re-lexed from there as
+// usual: a text which does not lex doesn't make every later edit lex the whole file again.
+public class IncrementalLexer {
+  private final String fileName;
+  private final LexerOptions options;
+  private String text; // The current text of the file
+  private StaticErrorException error; // The error lexing text, null if it lexes
+  // The tokens of the last text which did lex (the lexed text), none if no text did yet. The lexed text is the
+  // current one but for the chars between editStart and editEnd, which were replaced by editDelta more chars.
+  private final List<Token> tokens = new ArrayList<>();
+  private int editStart;
+  private int editEnd;
+  private int editDelta;
+  // State of the lexer at the end of each token: its offset in the lexed text, line and column
+  private int[] endOffset = new int[0];
+  private int[] endLine = new int[0];
+  private int[] endColumn = new int[0];
+  int relexed; // Number of tokens lexed by the last edit
+
+  public IncrementalLexer(String fileName, String text) {
+    this(fileName, text, LexerOptions.DEFAULT);
+  }
+
+  public IncrementalLexer(String fileName, String text, LexerOptions options) {
+    this.fileName = fileName;
+    this.options = options;
+    // Start from an empty text, which has no tokens yet, with all of text inserted
+    this.text = "";
+    try {
+      this.edit(0, 0, text);
+    } catch (StaticErrorException e) {
+      // Kept in error()
+    }
+  }
+
+  public String text() {
+    return this.text;
+  }
+
+  // error returns the error lexing the current text, or null if it lexes.
+  public StaticErrorException error() {
+    return this.error;
+  }
+
+  // tokens returns the tokens of the current text, the last one being the EOF token. If the current text does not lex
+  // (see error()), they are the tokens of the last text which did, and there are none if no text did yet.
+  //
+  // The list is a view of the tokens, not a copy: the next edit changes it, and updates the tokens it keeps in place. A
+  // list returned before an edit must not be used after it.
+  public List<Token> tokens() {
+    return Collections.unmodifiableList(this.tokens);
+  }
+
+  // edit replaces the deleted chars at offset of the text with inserted, and returns the tokens of the new text. If the
+  // new text does not lex, the error is thrown (and returned by error() from then on) but the edit is still applied,
+  // so that later edits apply to the text they were made on.
+  public List<Token> edit(int offset, int deleted, String inserted) {
+    if (offset < 0 || deleted < 0 || offset + deleted > this.text.length()) {
+      throw new IndexOutOfBoundsException(
+          String.format("Edit of %d chars at %d out of a text of %d chars", deleted, offset, this.text.length()));
+    }
+    String text = this.text.substring(0, offset) + inserted + this.text.substring(offset + deleted);
+    // Offsets in the lexed text of the part to lex again. When the current text does not lex, the edit is merged with
+    // the part edited since the lexed text: in the current text, that part is between editStart and editEnd +
+    // editDelta, and the chars after it are the chars after editEnd in the lexed text.
+    int start = offset;
+    int end = offset + deleted - this.editDelta;
+    if (this.error != null) {
+      start = Math.min(start, this.editStart);
+      end = Math.max(end, this.editEnd);
+    }
+    int delta = this.editDelta + inserted.length() - deleted;
+    this.text = text;
+    try {
+      this.relex(text, start, end, delta);
+    } catch (StaticErrorException e) {
+      // The tokens are left as they were, those of the lexed text
+      this.error = e;
+      this.editStart = start;
+      this.editEnd = end;
+      this.editDelta = delta;
+      throw e;
+    }
+    this.error = null;
+    this.editStart = 0;
+    this.editEnd = 0;
+    this.editDelta = 0;
+    return this.tokens();
+  }
+
+  // relex lexes text, the lexed text with the chars between editStart and editEnd replaced by delta more chars. The
+  // tokens are left as they were if text does not lex.
+  private void relex(String text, int editStart, int editEnd, int delta) {
+    int oldSize = this.endOffset.length;
+    // Restart after the last token that ends before the edit. The lexer looked at the rune at the end of that token to
+    // decide it was over, so it must not have been edited either.
+    int restart = lastBefore(this.endOffset, oldSize, editStart);
+    Lexer lexer = new Lexer(this.fileName, new StringSource(text), this.options);
+    if (restart >= 0) {
+      lexer.restart(this.endOffset[restart], this.endLine[restart], this.endColumn[restart]);
+    }
+
+    List<Token> tokens = new ArrayList<>();
+    int[] endOffset = new int[16];
+    int[] endLine = new int[16];
+    int[] endColumn = new int[16];
+    int old = restart + 1; // Index of the first old token which may end where a new token ends
+    int sync = oldSize; // Index of the old token after which old tokens are kept, oldSize if none is
+    for (Token t = lexer.nextToken(); t != null; t = lexer.nextToken()) {
+      int i = tokens.size();
+      if (i == endOffset.length) {
+        endOffset = Arrays.copyOf(endOffset, i * 2);
+        endLine = Arrays.copyOf(endLine, i * 2);
+        endColumn = Arrays.copyOf(endColumn, i * 2);
+      }
+      tokens.add(t.detach());
+      endOffset[i] = lexer.offset;
+      endLine[i] = lexer.line();
+      endColumn[i] = lexer.column();
+      if (t.kind == TokenKind.tokenEndOfFile) {
+        break;
+      }
+
+      // Once a new token ends where an old token after the edit ended, the rest of the text is the same and is lexed
+      // the same way, as the lexer holds no state between tokens.
+      while (old < oldSize && this.endOffset[old] + delta < endOffset[i]) {
+        old++;
+      }
+      // The EOF token is not a candidate, the new tokens always go on to their own EOF token.
+      if (old < oldSize - 1 && this.endOffset[old] >= editEnd && this.endOffset[old] + delta == endOffset[i]) {
+        sync = old;
+        break;
+      }
+    }
+
+    // Replace the old tokens from the restart point to the sync point with the new ones, and move the old tokens after
+    // the sync point in place.
+    int fresh = tokens.size();
+    int kept = sync < oldSize ? oldSize - sync - 1 : 0;
+    int size = restart + 1 + fresh + kept;
+    int[] offsets = new int[size];
+    int[] lines = new int[size];
+    int[] columns = new int[size];
+    System.arraycopy(this.endOffset, 0, offsets, 0, restart + 1);
+    System.arraycopy(this.endLine, 0, lines, 0, restart + 1);
+    System.arraycopy(this.endColumn, 0, columns, 0, restart + 1);
+    System.arraycopy(endOffset, 0, offsets, restart + 1, fresh);
+    System.arraycopy(endLine, 0, lines, restart + 1, fresh);
+    System.arraycopy(endColumn, 0, columns, restart + 1, fresh);
+    if (kept > 0) {
+      int lineDelta = endLine[fresh - 1] - this.endLine[sync];
+      int columnDelta = endColumn[fresh - 1] - this.endColumn[sync];
+      int line = this.endLine[sync]; // Columns only shift on the line the old and new tokens end on
+      for (int k = sync + 1, j = restart + 1 + fresh; k < oldSize; k++, j++) {
+        shift(this.tokens.get(k), delta, lineDelta, line, columnDelta);
+        offsets[j] = this.endOffset[k] + delta;
+        lines[j] = this.endLine[k] + lineDelta;
+        columns[j] = this.endColumn[k] + (this.endLine[k] == line ? columnDelta : 0);
+      }
+    }
+    List<Token> replaced = this.tokens.subList(restart + 1, Math.min(sync + 1, oldSize));
+    replaced.clear();
+    replaced.addAll(tokens);
+    this.endOffset = offsets;
+    this.endLine = lines;
+    this.endColumn = columns;
+    this.relexed = fresh;
+  }
+
+  // lastBefore returns the index of the last of the size first offsets which is smaller than offset, or -1. offsets
+  // are in increasing order.
+  private static int lastBefore(int[] offsets, int size, int offset) {
+    int lo = 0;
+    int hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (offsets[mid] < offset) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo - 1;
+  }
+
+  // shift moves a token by delta chars and lineDelta lines, and by columnDelta columns on line.
+  private static void shift(Token t, int delta, int lineDelta, int line, int columnDelta) {
+    Location begin = t.loc.begin();
+    Location end = t.loc.end();
+    if (begin.line == line) {
+      begin.column += columnDelta;
+    }
+    if (end.line == line) {
+      end.column += columnDelta;
+    }
+    begin.line += lineDelta;
+    end.line += lineDelta;
+    t.start += delta;
+    t.end += delta;
+  }
+}
@@ -0,0 +1,77 @@
+package com.jsonnet.lexer;
+
+import static com.jsonnet.lexer.TokenKind.*;
+
+
+// Keywords recognizes keywords directly on the source, without slicing the identifier first. The candidate keyword is
+// picked by the length of the identifier and then by one of its characters, so that a single comparison of the source
+// against the keyword text decides.
+final class Keywords {
+  private Keywords() {
+  }
+
+  // lookup returns the keyword between the offsets start (inclusive) and end (exclusive) of source, or null if that
+  // identifier is not a keyword.
+  static TokenKind lookup(Source source, int start, int end) {
+    TokenKind kind;
+    switch (end - start) {
+      case 2:
+        kind = source.unitAt(start + 1) == 'f' ? tokenIf : tokenIn;
+        break;
+      case 3:
+        kind = tokenFor;
+        break;
+      case 4:
+        switch (source.unitAt(start)) {
+          case 'e':
+            kind = tokenElse;
+            break;
+          case 'n':
+            kind = tokenNullLit;
+            break;
+          case 's':
+            kind = tokenSelf;
+            break;
+          case 't':
+            kind = source.unitAt(start + 1) == 'h' ? tokenThen : tokenTrue;
+            break;
+          default:
+            return null;
+        }
+        break;
+      case 5:
+        switch (source.unitAt(start)) {
+          case 'e':
+            kind = tokenError;
+            break;
+          case 'f':
+            kind = tokenFalse;
+            break;
+          case 'l':
+            kind = tokenLocal;
+            break;
+          case 's':
+            kind = tokenSuper;
+            break;
+          default:
+            return null;
+        }
+        break;
+      case 6:
+        kind = source.unitAt(start) == 'a' ? tokenAssert : tokenImport;
+        break;
+      case 8:
+        kind = tokenFunction;
+        break;
+      case 9:
+        kind = source.unitAt(start + 6) == 's' ? tokenImportStr : tokenImportBin;
+        break;
+      case 10:
+        kind = tokenTailStrict;
+        break;
+      default:
+        return null;
+    }
+    return source.startsWith(kind.toString(), start) ? kind : null;
+  }
+}
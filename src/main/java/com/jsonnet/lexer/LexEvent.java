@@ -0,0 +1,46 @@
+package com.jsonnet.lexer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+// LexEvent is the JDK Flight Recorder event of the lexing of a file, from the making of its lexer to the end of the
+// file. The class is only loaded if the runtime has the flight recorder (see Lexer.flightRecorder), so the lexer only
+// refers to it through the static methods below.
+@Name("jsonnet.Lex")
+@Label("Jsonnet Lex")
+@Category("Jsonnet")
+@Description("Lexing of a jsonnet file")
+@StackTrace(false)
+final class LexEvent extends jdk.jfr.Event {
+  @Label("File Name")
+  String fileName;
+
+  @Label("Size")
+  @Description("Size of the file, in bytes for UTF-8 input and in chars otherwise")
+  long size;
+
+  // start returns a started event, or null if the event is not enabled in any recording.
+  static Object start() {
+    LexEvent event = new LexEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  // end commits event, as returned by start, for the file fileName of the given size.
+  static void end(Object event, String fileName, long size) {
+    LexEvent e = (LexEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.fileName = fileName;
+      e.size = size;
+      e.commit();
+    }
+  }
+}
@@ -1,11 +1,23 @@
 package com.jsonnet.lexer;
 
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
-import com.jsonnet.lexer.fodder.FodderElement;
 import com.jsonnet.lexer.fodder.FodderKind;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 
 import static com.jsonnet.lexer.LexState.*;
 import static com.jsonnet.lexer.TokenKind.*;
@@ -15,56 +27,250 @@ import static com.jsonnet.lexer.fodder.FodderKind.fodderWhitespace;
 
 
 // ---------------------------------------------------------------------------------------------------------------------
-// Lexer scans the input file and produces list of matching tokens
+// Lexer scans the input file and produces list of matching tokens. Tokens can either be pulled one at a time with
+// nextToken() (or the iterator()/spliterator() views over it), so that the input is lexed on demand, or be collected
+// all at once with lex().
 public class Lexer {
   static final int lexEOF = -1; // a special rune indicating the lexer has reached the EOF
+  // Whether the runtime has the JDK Flight Recorder, the lexing of every file is then recorded as a jsonnet.Lex event
+  static final boolean flightRecorder = hasClass("jdk.jfr.Event");
 
   String fileName; // The file name being lexed, only used for errors
-  String input; // The input string
-  int[] runes; // The runes (code point in java terminology) of input string
-  // Current position of the lexer
-  position currPos;
+  Source source; // The input being lexed
+  // The input, if it is read from a stream. Tokens are then detached from it as they are emitted, see ReaderSource.
+  ReaderSource stream;
+  LexerOptions options; // What the lexer retains besides the tokens
+  int offset; // Current position of the lexer, as an offset in the source
   // Previous position of the lexer (before previous call to 'next')
-  // If this state is lost then prevPos is set to lexEOF and panic ensues.
-  position prevPos;
-  List<Token> tokens; // The tokens that we've generated so far
+  // If this state is lost then prevOffset is set to lexEOF and panic ensues.
+  int prevOffset;
+  // Where the lines of the source start. Lines and columns are only worked out from it when they are asked for.
+  LineIndex lines;
+  Token token; // The token generated by the last lexing step, if any, not handed out yet
+  TokenBuffer buffer; // If set, tokens are appended to this buffer instead of being generated as Token objects
+  boolean done; // Whether the EOF token has been generated
   // Information about the token we are working on right now
-  List<FodderElement> fodder; // fodder (if there are) around the current token
-  int tokenStart; // start rune number of the current token
-  Location tokenStartLoc; // location of the first rune of the current token
+  IdentifierTable identifiers; // Shared instances of the identifiers lexed so far
+  FodderTable fodder; // The fodder table being filled, the fodder of the current token is at its end
+  int fodderStart; // Index in fodder of the first fodder element of the current token
+  // Whether a token or an error refers to lines and fodder. If not, they are reused for the next input (see reset).
+  boolean shared;
+  int tokenStart; // start offset (in source code units) of the current token
+  int stepStart; // Offset where the current lexing step started, see rewindStep
+  double number; // The value of the current token, if it is a number
+  Operator operator; // The operator of the current token, if it is an operator token
+  // Instrumentation, only set while someone listens
+  LexerStats stats; // The statistics reported to the listener of the options
+  Object event; // The LexEvent of the file, as the class may not be loaded
 
   public Lexer(String fileName, String input) {
+    this(fileName, input, LexerOptions.DEFAULT);
+  }
+
+  public Lexer(String fileName, String input, LexerOptions options) {
+    this(fileName, new StringSource(input), options);
+  }
+
+  // Lexer lexes the chars of input in place, e.g. the content of an editor buffer, without copying it to a String.
+  public Lexer(String fileName, CharSequence input) {
+    this(fileName, input, LexerOptions.DEFAULT);
+  }
+
+  public Lexer(String fileName, CharSequence input, LexerOptions options) {
+    this(fileName, input instanceof String ? new StringSource((String) input) : new CharSequenceSource(input), options);
+  }
+
+  // Lexer lexes the UTF-8 encoded bytes between the position and the limit of input. The bytes are decoded on the fly,
+  // so the input is never copied as a whole.
+  public Lexer(String fileName, ByteBuffer input) {
+    this(fileName, input, LexerOptions.DEFAULT);
+  }
+
+  public Lexer(String fileName, ByteBuffer input, LexerOptions options) {
+    this(fileName, new Utf8Source(input), options);
+  }
+
+  // Lexer lexes the UTF-8 encoded file at path, which is mapped in memory rather than read into the heap.
+  public Lexer(Path path) throws IOException {
+    this(path, LexerOptions.DEFAULT);
+  }
+
+  public Lexer(Path path, LexerOptions options) throws IOException {
+    this(path.toString(), new Utf8Source(map(path)), options);
+  }
+
+  // Lexer lexes the chars read from input as they are needed, through a window of LexerOptions.bufferSize() chars (see
+  // ReaderSource), so that an input of any size can be lexed in bounded memory. The tokens are handed out with their
+  // data, fodder and location already worked out, and hold no reference to the input: only the tokens kept by the
+  // caller stay in memory. Such a lexer can't lex to a TokenBuffer, as a buffer refers to the whole input. The input
+  // is not closed by the lexer.
+  public Lexer(String fileName, Reader input) {
+    this(fileName, input, LexerOptions.DEFAULT);
+  }
+
+  public Lexer(String fileName, Reader input, LexerOptions options) {
+    this(fileName, new ReaderSource(input, options.bufferSize), options);
+  }
+
+  // Lexer lexes the UTF-8 encoded bytes read from input as they are needed, e.g. from a socket or a pipe. The bytes are
+  // decoded to chars on the way, malformed ones are replaced by U+FFFD.
+  public Lexer(String fileName, ReadableByteChannel input) {
+    this(fileName, input, LexerOptions.DEFAULT);
+  }
+
+  public Lexer(String fileName, ReadableByteChannel input, LexerOptions options) {
+    this(fileName, Channels.newReader(input, StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE), -1), options);
+  }
+
+  Lexer(String fileName, Source source, LexerOptions options) {
+    this.options = options;
+    this.identifiers = new IdentifierTable(source);
+    this.reset(fileName, source);
+  }
+
+  // Lexer makes a lexer without an input, it must be reset before it is used.
+  Lexer(LexerOptions options) {
+    this.options = options;
+    this.identifiers = new IdentifierTable(null);
+  }
+
+  // reset makes the lexer start over on another input, as a new lexer with the same options would. Its identifier table
+  // is kept for the new input, which saves the allocation of a lexer per file when many small files are lexed (see
+  // LexerPool). The tokens of the previous input are not affected: the fodder tables and the line index they refer to
+  // are left to them. If the previous input was lexed to a TokenBuffer, which copies what it needs out of them, nothing
+  // refers to them and they are reused as well.
+  public void reset(String fileName, CharSequence input) {
+    this.reset(fileName, input instanceof String ? new StringSource((String) input) : new CharSequenceSource(input));
+  }
+
+  // reset makes the lexer start over on the UTF-8 encoded bytes between the position and the limit of input.
+  public void reset(String fileName, ByteBuffer input) {
+    this.reset(fileName, new Utf8Source(input));
+  }
+
+  // reset makes the lexer start over on the UTF-8 encoded file at path, which is mapped in memory.
+  public void reset(Path path) throws IOException {
+    this.reset(path.toString(), new Utf8Source(map(path)));
+  }
+
+  void reset(String fileName, Source source) {
     this.fileName = fileName;
-    this.input = input;
-    this.runes = input.codePoints().toArray();
-    this.tokens = new LinkedList<>();
-    this.fodder = new LinkedList<>();
-    this.currPos = new position(0, 1, 0);
-    this.prevPos = new position(lexEOF, 1, 0);
-    this.tokenStartLoc = new Location(1, 1);
+    this.source = source;
+    this.stream = source instanceof ReaderSource ? (ReaderSource) source : null;
+    this.offset = 0;
+    this.prevOffset = lexEOF;
+    if (this.lines == null || this.shared) {
+      this.lines = new LineIndex(source);
+      this.fodder = new FodderTable(source);
+    } else {
+      this.lines.reset(source);
+      this.fodder.reset(source);
+    }
+    this.shared = false;
+    this.token = null;
+    this.buffer = null;
+    this.done = false;
+    this.identifiers.reset(source);
+    this.fodderStart = 0;
+    this.tokenStart = 0;
+    this.stats = this.options.listener != null ? new LexerStats(fileName) : null;
+    this.event = flightRecorder ? LexEvent.start() : null;
+  }
+
+  private static boolean hasClass(String name) {
+    try {
+      Class.forName(name, false, Lexer.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  // release drops the references of the lexer to its input, so that a lexer kept for later use (e.g. by a LexerPool)
+  // doesn't keep the last input it lexed alive. It must be reset before it is used again.
+  void release() {
+    this.source = null;
+    this.stream = null;
+    if (this.shared) {
+      this.lines = null;
+      this.fodder = null;
+    } else {
+      // Kept for the next input, without the last one
+      this.lines.reset(null);
+      this.fodder.reset(null);
+    }
+    this.token = null;
+    this.buffer = null;
+    this.stats = null;
+    this.event = null;
+    this.identifiers.reset(null); // The names of the table are shared Strings, they are not a part of the input
+  }
+
+  // restart moves the lexer to offset, which must be the end of a token (or the start of the source), at the given
+  // line and column. Lexing from there gives the same tokens as lexing from the start of the source would.
+  void restart(int offset, int lineNo, int column) {
+    this.offset = offset;
+    this.prevOffset = lexEOF;
+    this.shared = true; // The tokens lexed before the restart refer to the fodder table
+    this.lines = new LineIndex(this.source, offset, lineNo, column);
+    this.resetTokenStart();
+    // Only a part of the file is lexed from here, there is nothing to report about the file
+    this.stats = null;
+    this.event = null;
+  }
+
+  // rewindStep moves a lexer reading a stream back to the start of the lexing step it was in, as if it had never gone
+  // further. A step lexes a single token or fodder element, which it only adds once it is complete, so the tokens and
+  // the fodder lexed before it are kept as they are. It is for a lexer whose stream ran out of input in the middle of a
+  // step (see PushLexer): the step is lexed again once there is more input.
+  void rewindStep() {
+    this.offset = this.stepStart;
+    this.prevOffset = lexEOF;
+    this.token = null;
+    this.resetTokenStart();
+  }
+
+  // line returns the line of the current position of the lexer.
+  int line() {
+    return this.lines.line(this.offset);
+  }
+
+  // column returns the column of the current position of the lexer.
+  int column() {
+    return this.lines.column(this.offset);
   }
 
   // nextRune returns the next rune (code point in java terminology) in the input.
   private int nextRune() {
-    this.prevPos.runeNo = this.currPos.runeNo;
-    this.prevPos.lineNo = this.currPos.lineNo;
-    this.prevPos.lineStart = this.currPos.lineStart;
+    this.prevOffset = this.offset;
 
     // reached the EOF, return the lexEOF special rune
-    if (this.currPos.runeNo >= this.runes.length) {
+    if (!this.source.has(this.offset)) {
       return lexEOF;
     }
 
-    // increment the rune cursor
-    int rune = this.runes[this.currPos.runeNo];
-    this.currPos.runeNo += 1;
-
-    // if encounter a new line, increase the line number
-    if (rune == '\n') {
-      this.currPos.lineNo += 1;
-      this.currPos.lineStart = this.currPos.runeNo;
+    // All of the jsonnet syntax is ASCII, and ASCII runes are a single code unit whatever the encoding. Only string
+    // contents and comments need the runes to be decoded.
+    int unit = this.source.unitAt(this.offset);
+    if (unit < 0x80) {
+      this.offset++;
+      // if encounter a new line, record where the next line starts
+      if (unit == '\n') {
+        this.lines.addLine(this.offset);
+      }
+      return unit;
     }
 
+    // increment the rune cursor
+    int rune = this.source.runeAt(this.offset);
+    int length = this.source.runeLength(this.offset);
+    if (length > 1) {
+      // columns on this line can't be worked out from offsets alone
+      this.lines.markWide(this.offset);
+    }
+    this.offset += length;
     return rune;
   }
 
@@ -84,67 +290,148 @@ public class Lexer {
 
   // stepBack steps back one rune. Can only be called once per call of next.
   private void stepBack() {
-    if (this.prevPos.runeNo == lexEOF) {
+    if (this.prevOffset == lexEOF) {
       throw new RuntimeException("backup called with no valid previous rune");
     }
     // move the cursor one rune back
-    this.currPos.runeNo = this.prevPos.runeNo;
-    this.currPos.lineNo = this.prevPos.lineNo;
-    this.currPos.lineStart = this.prevPos.lineStart;
-    // set prev runeNo as -1 so that stepBack() can only be called once per call of next
-    this.prevPos.runeNo = lexEOF;
+    this.offset = this.prevOffset;
+    // set prev offset as -1 so that stepBack() can only be called once per call of next
+    this.prevOffset = lexEOF;
   }
 
-  // location returns the location the lexer current working on
-  private Location location() {
-    return new Location(this.currPos.lineNo, this.currPos.runeNo - this.currPos.lineStart + 1);
+  // prevOffset returns the offset the lexer previously worked on
+  private int prevOffset() {
+    if (this.prevOffset == lexEOF) {
+      throw new RuntimeException("prevOffset called with no valid previous rune");
+    }
+    return this.prevOffset;
   }
 
-  // prevLocation returns the location the lexer previously worked on
-  private Location prevLocation() {
-    if (this.prevPos.runeNo == lexEOF) {
-      throw new RuntimeException("prevLocation called with no valid previous rune");
-    }
-    return new Location(this.prevPos.lineNo, this.prevPos.runeNo - this.prevPos.lineStart + 1);
+  // error returns an error at offset, whose location is worked out when the error is reported.
+  private StaticErrorException error(String msg, int offset) {
+    this.shared = true;
+    return new StaticErrorException(msg, new LocationRange(this.fileName, this.lines, offset, offset));
   }
 
   // Reset the current working token start to the current cursor position.
   // - this may throw away some characters.
   // - this does not throw away any accumulated fodder.
   private void resetTokenStart() {
-    this.tokenStart = this.currPos.runeNo;
-    this.tokenStartLoc = this.location();
+    this.tokenStart = this.offset;
   }
 
+  // emitFullToken emits a token ending at the current cursor position. If data is null, the data of the token is the
+  // input from the token start to the cursor.
   private void emitFullToken(TokenKind kind, String data, String stringBlockIndent, String stringBlockTermIndent) {
-    LocationRange locationRange = new LocationRange(this.fileName, this.tokenStartLoc, this.location());
-    this.tokens.add((new Token(kind, this.fodder, data, stringBlockIndent, stringBlockTermIndent, locationRange)));
-    this.fodder.clear(); // clear fodder if token emitted
+    if (this.stats != null) {
+      this.stats.tokens[kind.ordinal()]++;
+    }
+    if (this.buffer != null) {
+      this.buffer.add(kind, this.tokenStart, this.offset, data, stringBlockIndent, stringBlockTermIndent,
+          this.lines.line(this.tokenStart), this.lines.column(this.tokenStart), this.line(), this.column(),
+          this.fodder, this.fodderStart);
+      if (kind == tokenNumber) {
+        this.buffer.setNumber(this.number);
+      } else if (kind == tokenOperator || kind == tokenIn) {
+        this.buffer.setOperator(kind == tokenIn ? Operator.opIn : this.operator);
+      }
+      // The buffer copied the fodder of the token, the table can start over
+      this.fodder.clear();
+      this.fodderStart = 0;
+      return;
+    }
+    this.shared = true;
+    LocationRange locationRange = new LocationRange(this.fileName, this.lines, this.tokenStart, this.offset);
+    if (data == null) {
+      this.token = new Token(kind, null, this.source, this.tokenStart, this.offset, locationRange);
+    } else {
+      this.token = new Token(kind, null, data, stringBlockIndent, stringBlockTermIndent, locationRange);
+      this.token.start = this.tokenStart;
+      this.token.end = this.offset;
+    }
+    if (kind == tokenNumber) {
+      this.token.number = this.number;
+    } else if (kind == tokenOperator || kind == tokenIn) {
+      this.token.operator = kind == tokenIn ? Operator.opIn : this.operator;
+    }
+    this.token.fodderTable = this.fodder;
+    this.token.fodderStart = this.fodderStart;
+    this.token.fodderCount = this.fodder.size() - this.fodderStart;
+    this.fodderStart = this.fodder.size(); // clear fodder if token emitted
+    if (this.stream != null) {
+      // The window of the stream moves past the token, so the token takes what it needs out of it now. The lexer won't
+      // go back before the token end either: the fodder table and the line index start over from there.
+      this.token.detach();
+      this.fodder.clear();
+      this.fodderStart = 0;
+      this.lines.rebase(this.offset);
+      this.stream.keep = this.offset;
+    }
+  }
+
+  // finish reports the lexing of the file, once its end of file token has been emitted.
+  private void finish() {
+    if (this.stats != null) {
+      this.stats.finish(this.source);
+      this.options.listener.lexed(this.stats);
+      this.stats = null;
+    }
+    if (this.event != null) {
+      LexEvent.end(this.event, this.fileName, this.source.length());
+      this.event = null;
+    }
   }
 
   private void emitToken(TokenKind kind) {
-    this.emitFullToken(kind, subStringByRuneIndex(this.input, this.tokenStart, this.currPos.runeNo), "", "");
+    this.emitFullToken(kind, null, "", "");
     this.resetTokenStart();
   }
 
+  // emitOperator emits an operator token, which stands for op (null if its symbols make up no operator).
+  private void emitOperator(Operator op) {
+    this.operator = op;
+    this.emitToken(tokenOperator);
+  }
+
   private void addWhitespaceFodder() {
-    String fodderData = subStringByRuneIndex(this.input, this.tokenStart, this.currPos.runeNo);
-    if (this.fodder.size() == 0 || this.fodder.get(this.fodder.size() - 1).fodderKind != fodderWhitespace) {
-      this.fodder.add(new FodderElement(fodderWhitespace, fodderData));
+    if (!this.options.captureFodder) {
+      // skip the whole run of whitespace at once, there is nothing to record
+      while (isWhitespace(this.peek())) {
+        this.nextRune();
+      }
+    } else if (this.fodder.size() > this.fodderStart && this.fodder.kind(this.fodder.size() - 1) == fodderWhitespace) {
+      // whitespace runs are contiguous in the source, so merging them only moves the end of the range
+      this.fodder.extendLast(this.offset);
     } else {
-      this.fodder.get(this.fodder.size() - 1).data += fodderData;
+      this.addFodder(fodderWhitespace, this.tokenStart, this.offset);
     }
     this.resetTokenStart();
   }
 
   private void addCommentFodder(FodderKind kind) {
-    String fodderData = subStringByRuneIndex(this.input, this.tokenStart, this.currPos.runeNo);
-    fodder.add(new FodderElement(kind, fodderData));
+    this.addFodder(kind, this.tokenStart, this.offset);
     this.resetTokenStart();
   }
 
-  private void addCommentCFodder(String data) {
-    this.fodder.add(new FodderElement(FodderKind.fodderCommentC, data));
+  // addFodder adds a fodder element to the fodder of the current token. When the fodder table is full, the fodder of the
+  // current token is carried over to a new table so that it stays contiguous. The table only grows instead if the
+  // current token owns all of it.
+  private void addFodder(FodderKind kind, int start, int end) {
+    if (!this.options.captureFodder) {
+      return;
+    }
+    if (this.fodder.isFull() && this.fodderStart > 0) {
+      FodderTable table = new FodderTable(this.source);
+      for (int i = this.fodderStart; i < this.fodder.size(); i++) {
+        table.add(this.fodder.kind(i), this.fodder.start(i), this.fodder.end(i));
+      }
+      this.fodder = table;
+      this.fodderStart = 0;
+    }
+    this.fodder.add(kind, start, end);
+    if (this.stats != null) {
+      this.stats.fodder[kind.ordinal()]++;
+    }
   }
 
   // lexNumber will consume a number and emit a token.
@@ -156,6 +443,15 @@ public class Lexer {
     // <identifier> <number> instead of the intended <identifier> <binop> <number>.
 
     LexState state = numBegin;
+    // The value is worked out on the way, as NumberParser.parse would from the code units of the literal
+    long mantissa = 0; // The first significant digits, as an unsigned long
+    int mantissaDigits = 0;
+    int digits = 0; // Number of significant digits
+    int decimalPoint = 0; // Position of the decimal point, relative to the first significant digit
+    boolean sawDot = false;
+    boolean truncated = false; // Whether non-zero digits were left out of the mantissa
+    int exponent = 0;
+    int exponentSign = 1;
 
     Loop:
     while (true) {
@@ -167,7 +463,7 @@ public class Lexer {
           } else if (isDigit(rune)) {
             state = numAfterOneToNine;
           } else {
-            throw new StaticErrorException("Couldn't lex number", this.fileName, this.prevLocation());
+            throw this.error("Couldn't lex number", this.prevOffset());
           }
           break;
 
@@ -197,9 +493,8 @@ public class Lexer {
           if (isDigit(rune)) {
             state = numAfterDigit;
           } else {
-            throw new StaticErrorException(
-                String.format("Couldn't lex number, junk after decimal point: '%s'", (char) rune), this.fileName,
-                this.prevLocation());
+            throw this.error(
+                String.format("Couldn't lex number, junk after decimal point: '%s'", (char) rune), this.prevOffset());
           }
           break;
 
@@ -219,8 +514,8 @@ public class Lexer {
           } else if (isDigit(rune)) {
             state = numAfterExpDigit;
           } else {
-            throw new StaticErrorException(String.format("Couldn't lex number, junk after 'E': '%c'", (char) rune),
-                this.fileName, this.prevLocation());
+            throw this.error(String.format("Couldn't lex number, junk after 'E': '%c'", (char) rune),
+                this.prevOffset());
           }
           break;
 
@@ -228,9 +523,8 @@ public class Lexer {
           if (isDigit(rune)) {
             state = numAfterExpDigit;
           } else {
-            throw new StaticErrorException(
-                String.format("Couldn't lex number, junk after exponent sign: '%c'", (char) rune), this.fileName,
-                this.prevLocation());
+            throw this.error(
+                String.format("Couldn't lex number, junk after exponent sign: '%c'", (char) rune), this.prevOffset());
           }
           break;
 
@@ -242,9 +536,37 @@ public class Lexer {
           }
           break;
       }
+
+      // The rune is a part of the literal, as the state it led to tells
+      if (state == numAfterExpDigit) {
+        if (exponent < 10000) { // Exponents too large to matter are capped, to not overflow
+          exponent = exponent * 10 + (rune - '0');
+        }
+      } else if (state == numAfterExpSign) {
+        exponentSign = rune == '-' ? -1 : 1;
+      } else if (state == numAfterDot) {
+        sawDot = true;
+        decimalPoint = digits;
+      } else if (rune == '0' && digits == 0) {
+        decimalPoint--; // Leading zeros are not significant, but move the decimal point
+      } else if (isDigit(rune)) {
+        digits++;
+        if (mantissaDigits < NumberParser.maxMantissaDigits) {
+          mantissa = mantissa * 10 + (rune - '0');
+          mantissaDigits++;
+        } else if (rune != '0') {
+          truncated = true;
+        }
+      }
     }
 
     this.stepBack();
+    if (!sawDot) {
+      decimalPoint = digits;
+    }
+    decimalPoint += exponentSign * exponent;
+    this.number = NumberParser.value(mantissa, decimalPoint - mantissaDigits, truncated, this.source, this.tokenStart,
+        this.offset);
     this.emitToken(tokenNumber);
   }
 
@@ -262,61 +584,16 @@ public class Lexer {
 
     this.stepBack();
 
-    switch (subStringByRuneIndex(this.input, this.tokenStart, this.currPos.runeNo)) {
-      case "assert":
-        this.emitToken(tokenAssert);
-        break;
-      case "else":
-        this.emitToken(tokenElse);
-        break;
-      case "error":
-        this.emitToken(tokenError);
-        break;
-      case "false":
-        this.emitToken(tokenFalse);
-        break;
-      case "for":
-        this.emitToken(tokenFor);
-        break;
-      case "function":
-        this.emitToken(tokenFunction);
-        break;
-      case "if":
-        this.emitToken(tokenIf);
-        break;
-      case "import":
-        this.emitToken(tokenImport);
-        break;
-      case "importstr":
-        this.emitToken(tokenImportStr);
-        break;
-      case "in":
-        this.emitToken(tokenIn);
-        break;
-      case "local":
-        this.emitToken(tokenLocal);
-        break;
-      case "null":
-        this.emitToken(tokenNullLit);
-        break;
-      case "self":
-        this.emitToken(tokenSelf);
-        break;
-      case "super":
-        this.emitToken(tokenSuper);
-        break;
-      case "tailstrict":
-        this.emitToken(tokenTailStrict);
-        break;
-      case "then":
-        this.emitToken(tokenThen);
-        break;
-      case "true":
-        this.emitToken(tokenTrue);
-        break;
-      default:
-        // Not a keyword, assume it is an identifier
-        this.emitToken(tokenIdentifier);
+    TokenKind keyword = Keywords.lookup(this.source, this.tokenStart, this.offset);
+    if (keyword != null) {
+      this.emitToken(keyword);
+    } else if (this.buffer != null) {
+      // Not a keyword, assume it is an identifier. The buffer only keeps its offsets.
+      this.emitToken(tokenIdentifier);
+    } else {
+      // Not a keyword, assume it is an identifier
+      this.emitFullToken(tokenIdentifier, this.identifiers.intern(this.tokenStart, this.offset), "", "");
+      this.resetTokenStart();
     }
   }
 
@@ -355,19 +632,17 @@ public class Lexer {
 
     // Multi line C++ style comment
     if (rune == '/' && this.peek() == '*') {
-      Location commentStartLoc = this.tokenStartLoc;
+      int commentStart = this.tokenStart;
       this.nextRune(); // consume the '*'
       this.resetTokenStart(); // Throw out the leading /*
 
       // consume runes until meet the close "*/"
       for (rune = this.nextRune(); ; rune = this.nextRune()) {
         if (isEOF(rune)) {
-          throw new StaticErrorException("Multi-line comment has no terminating */", this.fileName, commentStartLoc);
+          throw this.error("Multi-line comment has no terminating */", commentStart);
         }
         if (rune == '*' && this.peek() == '/') {
-          String commentData =
-              subStringByRuneIndex(this.input, this.tokenStart, this.currPos.runeNo - 1); // Don't include trailing */
-          this.addCommentCFodder(commentData);
+          this.addFodder(FodderKind.fodderCommentC, this.tokenStart, this.offset - 1); // Don't include trailing */
           this.nextRune();            // Skip past '/'
           this.resetTokenStart(); // Start next token at this point
           return;
@@ -376,60 +651,53 @@ public class Lexer {
     }
 
     // Block literal strings (multiline strings surrounding by "|||")
-    if (rune == '|' && subStringByRuneIndex(this.input, this.currPos.runeNo).startsWith("||\n")) {
-      Location commentStartLoc = this.tokenStartLoc;
+    if (rune == '|' && this.source.startsWith("||\n", this.offset)) {
+      int commentStart = this.tokenStart;
       this.acceptN(3); // Skip "||\n"
 
+      // The body of the block is appended to the builder a line at a time, straight from the source
       StringBuilder blockStringBuilder = new StringBuilder();
       // Skip leading blank lines
-      rune = this.nextRune();
-      while (isNewLine(rune)) {
-        blockStringBuilder.append(Character.toChars(rune));
-        rune = this.nextRune();
-      }
-      this.stepBack();
-      int numWhiteSpace = checkWhitespace(subStringByRuneIndex(this.input, this.currPos.runeNo),
-          subStringByRuneIndex(this.input, this.currPos.runeNo));
-      String stringBlockIndent =
-          subStringByRuneIndex(this.input, this.currPos.runeNo, this.currPos.runeNo + numWhiteSpace);
+      this.skipNewLines(blockStringBuilder);
+      int numWhiteSpace = this.countWhitespace(this.offset);
+      // the indent is made of ' ' and '\t' only, so its length in runes equals its length in code units
+      String stringBlockIndent = this.source.slice(this.offset, this.offset + numWhiteSpace);
       if (numWhiteSpace == 0) {
-        throw new StaticErrorException("Text block's first line must start with whitespace.", this.fileName,
-            commentStartLoc);
+        throw this.error("Text block's first line must start with whitespace", commentStart);
       }
 
-      // consume runes until meet the close "|||"
+      // consume lines until meet the close "|||"
       while (true) {
         if (numWhiteSpace <= 0) {
           throw new RuntimeException("Unexpected value for numWhiteSpace");
         }
-        this.acceptN(numWhiteSpace);
-        for (rune = this.nextRune(); rune != '\n'; rune = this.nextRune()) {
-          if (rune == lexEOF) {
-            throw new StaticErrorException("Unexpected EOF", this.fileName, commentStartLoc);
-          }
-          blockStringBuilder.append(Character.toChars(rune));
+        int lineStart = this.offset + numWhiteSpace;
+        int lineEnd = this.lineEnd(lineStart);
+        if (!this.source.has(lineEnd)) {
+          throw this.error("Unexpected EOF", commentStart);
         }
-        blockStringBuilder.append("\n");
+        this.source.appendTo(blockStringBuilder, lineStart, lineEnd + 1); // The line and its '\n'
+        this.skipTo(lineEnd + 1);
         // Skip any blank lines
-        for (rune = this.nextRune(); rune == '\n'; rune = this.nextRune()) {
-          blockStringBuilder.append(Character.toChars(rune));
-        }
-        this.stepBack();
+        this.skipNewLines(blockStringBuilder);
 
         // Look at the next line
-        numWhiteSpace = checkWhitespace(stringBlockIndent, subStringByRuneIndex(this.input, this.currPos.runeNo));
+        numWhiteSpace = this.checkWhitespace(stringBlockIndent, this.offset);
         if (numWhiteSpace == 0) {
           // End of the text block
-          StringBuilder termIndentStringBuilder = new StringBuilder();
-          for (rune = this.nextRune(); isHorizontalWhitespace(rune); rune = this.nextRune()) {
-            termIndentStringBuilder.append(String.valueOf(Character.toChars(rune)));
+          int termIndentEnd = this.offset;
+          while (this.source.has(termIndentEnd) && isHorizontalWhitespace(this.source.unitAt(termIndentEnd))) {
+            termIndentEnd++;
           }
-          String stringBlockTermIndent = termIndentStringBuilder.toString();
-          this.stepBack();
-          if (!subStringByRuneIndex(this.input, this.currPos.runeNo).startsWith("|||")) {
-            throw new StaticErrorException("Text block not terminated with |||", this.fileName, commentStartLoc);
+          String stringBlockTermIndent = this.source.slice(this.offset, termIndentEnd);
+          this.skipTo(termIndentEnd);
+          if (!this.source.startsWith("|||", this.offset)) {
+            throw this.error("Text block not terminated with |||", commentStart);
+          }
+          this.skipTo(this.offset + 3); // Skip '|||'
+          if (this.stats != null) {
+            this.stats.largestTextBlock = Math.max(this.stats.largestTextBlock, blockStringBuilder.length());
           }
-          this.acceptN(3); // Skip '|||'
           this.emitFullToken(tokenStringBlock, blockStringBuilder.toString(), stringBlockIndent, stringBlockTermIndent);
           this.resetTokenStart();
           return;
@@ -444,166 +712,436 @@ public class Lexer {
     }
 
     this.stepBack();
-    this.emitToken(tokenOperator);
+    this.emitOperator(Operator.of(this.source, this.tokenStart, this.offset));
   }
 
+  // lex lexes the whole input and returns all the tokens, the last one being the EOF token.
   public List<Token> lex() {
-    for (int rune = this.nextRune(); rune != lexEOF; rune = this.nextRune()) {
-      if (isWhitespace(rune)) {
+    List<Token> tokens = new ArrayList<>();
+    for (Token t = this.nextToken(); t != null; t = this.nextToken()) {
+      tokens.add(t);
+    }
+    return tokens;
+  }
+
+  // lexToBuffer lexes the whole input into a TokenBuffer, without generating a Token object per token.
+  public TokenBuffer lexToBuffer() {
+    if (this.stream != null) {
+      throw new IllegalStateException("An input read from a stream can't be lexed to a TokenBuffer");
+    }
+    this.buffer = new TokenBuffer(this.fileName, this.source);
+    try {
+      while (!this.done) {
+        this.lexStep();
+      }
+      return this.buffer;
+    } finally {
+      this.buffer = null;
+    }
+  }
+
+  // nextToken lexes and returns the next token in the input, or null once the EOF token has been returned. Only as much
+  // input as is needed to produce the token is consumed.
+  public Token nextToken() {
+    Token t = this.peekToken();
+    this.token = null;
+    return t;
+  }
+
+  // peekToken returns the token the next call to nextToken will return, without consuming it.
+  public Token peekToken() {
+    while (this.token == null && !this.done) {
+      this.lexStep();
+    }
+    return this.token;
+  }
+
+  // iterator returns a view of the remaining tokens, lexed on demand. It shares its state with this lexer.
+  public Iterator<Token> iterator() {
+    return new Iterator<Token>() {
+      @Override
+      public boolean hasNext() {
+        return Lexer.this.peekToken() != null;
+      }
+
+      @Override
+      public Token next() {
+        Token t = Lexer.this.nextToken();
+        if (t == null) {
+          throw new NoSuchElementException();
+        }
+        return t;
+      }
+    };
+  }
+
+  // spliterator returns an ordered, sequential spliterator over the remaining tokens, lexed on demand.
+  public Spliterator<Token> spliterator() {
+    return Spliterators.spliteratorUnknownSize(this.iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+  }
+
+  // lexStep consumes the next rune of the input together with whatever follows it to make up a token or a piece of
+  // fodder. It leaves the generated token (if any) in this.token.
+  private void lexStep() {
+    this.stepStart = this.offset;
+    int rune = this.nextRune();
+    if (rune == lexEOF) {
+      // We are currently at the EOF.  Emit a special token to capture any trailing fodder
+      this.emitToken(tokenEndOfFile);
+      this.done = true;
+      this.finish();
+      return;
+    }
+    switch (rune) {
+      case ' ':
+      case '\t':
+      case '\r':
+      case '\n':
         this.addWhitespaceFodder();
-      } else if (rune == '{') {
+        break;
+      case '{':
         this.emitToken(tokenBraceL);
-      } else if (rune == '}') {
+        break;
+      case '}':
         this.emitToken(tokenBraceR);
-      } else if (rune == '[') {
+        break;
+      case '[':
         this.emitToken(tokenBracketL);
-      } else if (rune == ']') {
+        break;
+      case ']':
         this.emitToken(tokenBracketR);
-      } else if (rune == ':') {
+        break;
+      case ':':
         this.emitToken(tokenColon);
-      } else if (rune == ',') {
+        break;
+      case ',':
         this.emitToken(tokenComma);
-      } else if (rune == '$') {
+        break;
+      case '$':
         this.emitToken(tokenDollar);
-      } else if (rune == '.') {
+        break;
+      case '.':
         this.emitToken(tokenDot);
-      } else if (rune == '(') {
+        break;
+      case '(':
         this.emitToken(tokenParenL);
-      } else if (rune == ')') {
+        break;
+      case ')':
         this.emitToken(tokenParenR);
-      } else if (rune == ';') {
+        break;
+      case ';':
         this.emitToken(tokenSemicolon);
-      } else if (rune == '!') { // Operators
+        break;
+      case '!': // Operators
         if (this.peek() == '=') {
           this.nextRune();
+          this.emitOperator(Operator.opManifestUnequal);
+        } else {
+          this.emitOperator(Operator.opNot);
         }
-        this.emitToken(tokenOperator);
-      } else if (rune == '~' || rune == '+' || rune == '-') {
-        this.emitToken(tokenOperator);
-      } else if (isDigit(rune)) {
-        this.stepBack();
-        this.lexNumber();
-      } else if (rune == '"') {
-        Location stringStartLoc = this.prevLocation();
-        this.resetTokenStart(); // Don't include the quotes in the token data
-        // meet a double quote string literal (e.g "hello world"), consume runes until meet the close "
-        for (rune = this.nextRune(); ; rune = this.nextRune()) {
-          if (rune == lexEOF) {
-            throw new StaticErrorException("Unterminated String", this.fileName, stringStartLoc);
-          }
-          if (rune == '"') {
-            this.stepBack();
-            this.emitToken(tokenStringDouble);
-            this.nextRune();
-            this.resetTokenStart();
-            break;
-          }
-          if (rune == '\\' && this.peek() != lexEOF) {
-            this.nextRune();
-          }
-        }
-      } else if (rune == '\'') {
-        Location stringStartLoc = this.prevLocation();
-        this.resetTokenStart();
-        // meet a single quote string literal (e.g 'hello world'), consume runes until meet the close '
-        for (rune = this.nextRune(); ; rune = this.nextRune()) {
-          if (rune == lexEOF) {
-            throw new StaticErrorException("Unterminated String", this.fileName, stringStartLoc);
-          }
-          if (rune == '\'') {
-            this.stepBack();
-            this.emitToken(tokenStringSingle);
-            this.nextRune();
-            this.resetTokenStart();
-            break;
-          }
-          if (rune == '\\' && this.peek() != lexEOF) {
-            this.nextRune();
-          }
-        }
-      } else {
-        if (isIdentifierFirst(rune)) {
+        break;
+      case '~':
+        this.emitOperator(Operator.opBitwiseNot);
+        break;
+      case '+':
+        this.emitOperator(Operator.opPlus);
+        break;
+      case '-':
+        this.emitOperator(Operator.opMinus);
+        break;
+      case '"':
+        // meet a double quote string literal (e.g "hello world")
+        this.lexString('"', tokenStringDouble);
+        break;
+      case '\'':
+        // meet a single quote string literal (e.g 'hello world')
+        this.lexString('\'', tokenStringSingle);
+        break;
+      case '@':
+        // meet a verbatim string literal (e.g @'C:\Users')
+        this.lexVerbatimString();
+        break;
+      default:
+        int cls = CharClass.of(rune);
+        if ((cls & CharClass.digit) != 0) {
+          this.stepBack();
+          this.lexNumber();
+        } else if ((cls & CharClass.identifierFirst) != 0) {
           this.stepBack();
           this.lexIdentifier();
-        } else if (isSymbol(rune)) {
+        } else if ((cls & CharClass.symbol) != 0) {
           this.stepBack();
           this.lexSymbol();
         } else {
-          throw new StaticErrorException(
-              String.format("Could not lex the character %s", String.valueOf(Character.toChars(rune))), this.fileName,
-              this.prevLocation());
+          throw this.error(
+              String.format("Could not lex the character %s", String.valueOf(Character.toChars(rune))),
+              this.prevOffset());
         }
+    }
+  }
+
+  // lexString will consume a string literal up to the closing quote and emit a token, whose data doesn't include the
+  // quotes. It is assumed that the opening quote has just been consumed. The escape sequences are decoded on the way,
+  // a literal without any has its data as its value and is never copied.
+  private void lexString(int quote, TokenKind kind) {
+    int stringStart = this.prevOffset();
+    this.resetTokenStart(); // Don't include the quotes in the token data
+    StringBuilder value = null; // The value of the literal, once an escape sequence is met
+    // The source up to this offset is in value. A buffer holds no values, so nothing is decoded for it.
+    int copied = this.buffer == null ? this.offset : -1;
+    boolean wide = false; // Whether the current line was marked as wide
+    // consume code units until meet the close quote
+    int i = this.offset;
+    for (; ; i++) {
+      if (!this.source.has(i)) {
+        throw this.error("Unterminated String", stringStart);
+      }
+      int unit = this.source.unitAt(i);
+      if (unit == quote) {
+        break;
+      }
+      if (unit == '\\' && this.source.has(i + 1)) {
+        if (copied >= 0) {
+          if (value == null) {
+            value = new StringBuilder(i - this.tokenStart + 16);
+          }
+          this.source.appendTo(value, copied, i);
+          copied = decodeEscape(this.source, i + 1, value); // An invalid sequence is reported with the value
+        }
+        i++;
+        unit = this.source.unitAt(i);
+        if (unit >= 0x80) {
+          i += this.source.runeLength(i) - 1;
+        }
+      }
+      if (unit == '\n') {
+        this.lines.addLine(i + 1);
+        wide = false;
+      } else if (unit >= 0x80 && !wide) {
+        this.lines.markWide(i);
+        wide = true;
+      }
+    }
+    this.skipTo(i);
+    this.emitToken(kind);
+    if (value != null && copied >= 0) {
+      this.source.appendTo(value, copied, i);
+      this.token.value = value.toString();
+    }
+    this.skipTo(i + 1); // Skip the close quote
+    this.resetTokenStart();
+  }
+
+  // lexVerbatimString will consume a verbatim string literal (e.g @"a ""quoted"" word") and emit a token. The data of
+  // the token is the value of the literal, i.e. its doubled quotes are resolved into a single quote: no information is
+  // lost by that, and there are no other escapes. It is assumed that the '@' has just been consumed.
+  private void lexVerbatimString() {
+    int stringStart = this.prevOffset();
+    int quote = this.nextRune();
+    TokenKind kind;
+    if (quote == '"') {
+      kind = tokenVerbatimStringDouble;
+    } else if (quote == '\'') {
+      kind = tokenVerbatimStringSingle;
+    } else {
+      throw this.error(String.format("Couldn't lex verbatim string, junk after '@': %s",
+          quote == lexEOF ? "EOF" : String.valueOf(Character.toChars(quote))), stringStart);
+    }
+    this.resetTokenStart(); // Don't include the quotes in the token data
+    StringBuilder value = null; // The value of the literal, once a doubled quote is met
+    int copied = this.offset; // The source up to this offset is in value
+    for (int rune = this.nextRune(); ; rune = this.nextRune()) {
+      if (rune == lexEOF) {
+        throw this.error("Unterminated String", stringStart);
+      }
+      if (rune == quote) {
+        if (this.peek() != quote) {
+          break;
+        }
+        if (value == null) {
+          value = new StringBuilder();
+        }
+        this.source.appendTo(value, copied, this.offset); // Up to and including the first quote
+        this.nextRune();
+        copied = this.offset;
       }
     }
+    int end = this.offset - 1; // The close quote is a single code unit
+    this.skipTo(end);
+    if (value == null) {
+      this.emitToken(kind);
+    } else {
+      this.source.appendTo(value, copied, end);
+      this.emitFullToken(kind, value.toString(), "", "");
+      this.resetTokenStart();
+    }
+    this.skipTo(end + 1); // Skip the close quote
+    this.resetTokenStart();
+  }
+
+  // decodeEscape appends the value of the escape sequence at offset of source, just after its backslash, to sb. It
+  // returns the offset after the sequence, or -1 if the sequence is not a valid one.
+  static int decodeEscape(Source source, int offset, StringBuilder sb) {
+    int unit = source.unitAt(offset);
+    switch (unit) {
+      case '"':
+      case '\'':
+      case '\\':
+      case '/':
+        sb.append((char) unit);
+        return offset + 1;
+      case 'b':
+        sb.append('\b');
+        return offset + 1;
+      case 'f':
+        sb.append('\f');
+        return offset + 1;
+      case 'n':
+        sb.append('\n');
+        return offset + 1;
+      case 'r':
+        sb.append('\r');
+        return offset + 1;
+      case 't':
+        sb.append('\t');
+        return offset + 1;
+      case 'u':
+        if (!source.has(offset + 4)) {
+          return -1;
+        }
+        int code = 0;
+        for (int i = offset + 1; i < offset + 5; i++) {
+          int digit = Character.digit(source.unitAt(i), 16);
+          if (digit < 0 || source.unitAt(i) >= 0x80) {
+            return -1;
+          }
+          code = code << 4 | digit;
+        }
+        // A surrogate pair is written as two escapes, each appends its half of the pair
+        sb.append((char) code);
+        return offset + 5;
+      default:
+        return -1;
+    }
+  }
 
-    // We are currently at the EOF.  Emit a special token to capture any trailing fodder
-    this.emitToken(tokenEndOfFile);
-    return this.tokens;
+  // unescape returns the value of the data of a string literal, i.e. the data with its escape sequences decoded. An
+  // invalid escape sequence is reported at loc, the location of the literal.
+  static String unescape(String data, LocationRange loc) {
+    int backslash = data.indexOf('\\');
+    if (backslash < 0) {
+      return data;
+    }
+    Source source = new StringSource(data);
+    StringBuilder sb = new StringBuilder(data.length());
+    int copied = 0;
+    for (int i = backslash; i >= 0; i = data.indexOf('\\', copied)) {
+      sb.append(data, copied, i);
+      copied = i + 1 < data.length() ? decodeEscape(source, i + 1, sb) : -1;
+      if (copied < 0) {
+        String sequence = data.substring(i, Math.min(data.length(), data.startsWith("u", i + 1) ? i + 6 : i + 2));
+        throw new StaticErrorException(String.format("Invalid escape sequence in string literal: %s", sequence), loc);
+      }
+    }
+    return sb.append(data, copied, data.length()).toString();
   }
 
-  // Check that b has at least the same whitespace prefix as a and returns the amount of this whitespace, otherwise
-  // returns 0. If a has no whitespace prefix than return 0.
-  private int checkWhitespace(String a, String b) {
+  // Check that the source (from offset) has at least the same whitespace prefix as a and returns the amount of this
+  // whitespace, otherwise returns 0. If a has no whitespace prefix than return 0. The source is compared in place, so
+  // that no copy of the rest of the input is made.
+  private int checkWhitespace(String a, int offset) {
     int i = 0;
     while (i < a.length()) {
       if (a.charAt(i) != ' ' && a.charAt(i) != '\t') {
-        // a has run out of whitespace and b matched up to this point. Return result.
+        // a has run out of whitespace and the source matched up to this point. Return result.
         return i;
       }
-      if (i >= b.length()) {
-        // We ran off the edge of b while a still has whitespace. Return 0 as failure.
+      if (!this.source.has(offset + i)) {
+        // We ran off the edge of the source while a still has whitespace. Return 0 as failure.
         return 0;
       }
-      if (a.charAt(i) != b.charAt(i)) {
-        // a has whitespace but b does not. Return 0 as failure.
+      if (a.charAt(i) != this.source.unitAt(offset + i)) {
+        // a has whitespace but the source does not. Return 0 as failure.
         return 0;
       }
       i++;
     }
-    // We ran off the end of a and b kept up
+    // We ran off the end of a and the source kept up
     return i;
   }
 
-  // -------------------------------------------------------------------------------------------------------------------
-  // Helpers
+  // countWhitespace returns the number of spaces and tabs in the source from offset on.
+  private int countWhitespace(int offset) {
+    int i = offset;
+    while (this.source.has(i) && (this.source.unitAt(i) == ' ' || this.source.unitAt(i) == '\t')) {
+      i++;
+    }
+    return i - offset;
+  }
 
-  private String subStringByRuneIndex(String input, int runeIndexStart) {
-    int indexStart = input.offsetByCodePoints(0, runeIndexStart);
-    return input.substring(indexStart);
+  // lineEnd returns the offset of the first '\n' from offset on, or the length of the source if there is none. The line
+  // is marked as wide if it has a non-ASCII code unit, as its runes are not gone over one by one.
+  private int lineEnd(int offset) {
+    int end = offset;
+    boolean wide = false;
+    for (; this.source.has(end); end++) {
+      int unit = this.source.unitAt(end);
+      if (unit == '\n') {
+        break;
+      }
+      wide |= unit >= 0x80;
+    }
+    if (wide) {
+      this.lines.markWide(offset);
+    }
+    return end;
   }
 
-  private String subStringByRuneIndex(String input, int runeIndexStart, int runeIndexEnd) {
-    int indexStart = input.offsetByCodePoints(0, runeIndexStart);
-    int indexEnd = input.offsetByCodePoints(indexStart, runeIndexEnd - runeIndexStart);
-    return input.substring(indexStart, indexEnd);
+  // skipTo moves the lexer forward to offset, on the same line or right after a '\n'.
+  private void skipTo(int offset) {
+    this.prevOffset = lexEOF;
+    this.offset = offset;
+    if (offset > 0 && this.source.unitAt(offset - 1) == '\n') {
+      this.lines.addLine(offset);
+    }
   }
 
-  static boolean isUpper(int rune) {
-    return Character.isUpperCase(rune);
+  // skipNewLines moves the lexer past the '\n's at its position, and appends them to sb.
+  private void skipNewLines(StringBuilder sb) {
+    while (this.source.has(this.offset) && this.source.unitAt(this.offset) == '\n') {
+      sb.append('\n');
+      this.skipTo(this.offset + 1);
+    }
   }
 
-  static boolean isLower(int rune) {
-    return Character.isLowerCase(rune);
+  // -------------------------------------------------------------------------------------------------------------------
+  // Helpers
+
+  // map maps the whole file at path in memory, read only. The mapping stays valid after the channel is closed.
+  static MappedByteBuffer map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
   }
 
   static boolean isDigit(int rune) {
-    return Character.isDigit(rune);
+    return CharClass.is(rune, CharClass.digit);
   }
 
   static boolean isSign(int rune) {
-    return rune == '+' || rune == '-';
+    return CharClass.is(rune, CharClass.sign);
   }
 
   static boolean isScientificNotation(int rune) {
-    return rune == 'e' || rune == 'E';
+    return CharClass.is(rune, CharClass.exponent);
   }
 
   static boolean isIdentifierFirst(int rune) {
-    return isUpper(rune) || isLower(rune) || rune == '_';
+    return CharClass.is(rune, CharClass.identifierFirst);
   }
 
   static boolean isIdentifier(int rune) {
-    return isIdentifierFirst(rune) || isDigit(rune);
+    return CharClass.is(rune, CharClass.identifier);
   }
 
   static boolean isEOF(int rune) {
@@ -615,29 +1153,14 @@ public class Lexer {
   }
 
   static boolean isSymbol(int rune) {
-    return ImmutableSet.of('!', '$', ':', '~', '+', '-', '&', '|', '^', '=', '<', '>', '*', '/', '%', '#')
-        .contains((char) rune);
+    return CharClass.is(rune, CharClass.symbol);
   }
 
   static boolean isHorizontalWhitespace(int rune) {
-    return rune == ' ' || rune == '\t' || rune == '\r';
+    return CharClass.is(rune, CharClass.horizontalWhitespace);
   }
 
   static boolean isWhitespace(int rune) {
-    return rune == '\n' || isHorizontalWhitespace(rune);
-  }
-
-  // -------------------------------------------------------------------------------------------------------------------
-  // position represents the position of a rune (line number, column number, rune number) in the src file
-  static class position {
-    int runeNo; // Column number
-    int lineNo; // Line number
-    int lineStart; // Rune number of the last newline
-
-    public position(int runeNo, int lineNo, int lineStart) {
-      this.runeNo = runeNo;
-      this.lineNo = lineNo;
-      this.lineStart = lineStart;
-    }
+    return CharClass.is(rune, CharClass.whitespace);
   }
 }
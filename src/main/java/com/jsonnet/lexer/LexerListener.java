@@ -0,0 +1,12 @@
+package com.jsonnet.lexer;
+
+// LexerListener is told about every file a Lexer lexes to its end, e.g. to export metrics of the time spent lexing.
+// It is set with LexerOptions.Builder.listener, and is called on the thread that lexed the file: a listener shared by
+// lexers on several threads (e.g. through a LexerService) must be thread-safe.
+//
+// Lexers which are moved to the middle of a file (the chunks of a ParallelLexer and the relexed regions of an
+// IncrementalLexer) don't see a whole file and report nothing.
+public interface LexerListener {
+  // lexed is called once the end of file token of a file has been lexed.
+  void lexed(LexerStats stats);
+}
@@ -0,0 +1,73 @@
+package com.jsonnet.lexer;
+
+// LexerOptions configures what a Lexer retains besides the tokens themselves. Options are immutable and can be shared
+// by any number of lexers; use builder() to make a new set of options.
+public class LexerOptions {
+  // The default options keep everything, so that source can be round tripped with full fidelity (e.g. by formatters).
+  public static final LexerOptions DEFAULT = builder().build();
+  // The evaluation options drop what only matters to tools working on the source text, such as fodder.
+  public static final LexerOptions EVALUATION = builder().captureFodder(false).build();
+
+  final boolean captureFodder; // Whether whitespace and comments are kept as fodder of the tokens
+  final LexerListener listener; // Told about every file lexed, if set
+  final int bufferSize; // Initial size in chars of the window an input read from a stream is lexed through
+
+  private LexerOptions(Builder builder) {
+    this.captureFodder = builder.captureFodder;
+    this.listener = builder.listener;
+    this.bufferSize = builder.bufferSize;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public boolean captureFodder() {
+    return this.captureFodder;
+  }
+
+  public LexerListener listener() {
+    return this.listener;
+  }
+
+  public int bufferSize() {
+    return this.bufferSize;
+  }
+
+  public static class Builder {
+    private boolean captureFodder = true;
+    private LexerListener listener;
+    private int bufferSize = 64 * 1024;
+
+    private Builder() {
+    }
+
+    // captureFodder sets whether whitespace and comments are kept as fodder of the tokens. Without fodder, comments are
+    // still checked (e.g. for a missing */) but every token has an empty list of fodder.
+    public Builder captureFodder(boolean captureFodder) {
+      this.captureFodder = captureFodder;
+      return this;
+    }
+
+    // listener sets the listener told about every file lexed with the options. The statistics it gets are only gathered
+    // while a listener is set, lexing without one costs nothing more.
+    public Builder listener(LexerListener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    // bufferSize sets the initial size, in chars, of the window through which an input read from a Reader or a channel
+    // is lexed. The window grows past it only for a token (with its fodder) that doesn't fit in it.
+    public Builder bufferSize(int bufferSize) {
+      if (bufferSize <= 0) {
+        throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+      }
+      this.bufferSize = bufferSize;
+      return this;
+    }
+
+    public LexerOptions build() {
+      return new LexerOptions(this);
+    }
+  }
+}
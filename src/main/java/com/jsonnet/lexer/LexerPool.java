@@ -0,0 +1,103 @@
+package com.jsonnet.lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+
+// ---------------------------------------------------------------------------------------------------------------------
+// LexerPool lexes files with a lexer per thread, which is reset for every file instead of being made anew. A worker
+// that lexes thousands of small imports reuses the same lexer, and the same identifier table, for all of them. Files
+// lexed to a TokenBuffer reuse the line index and the fodder table of the lexer as well, grown as needed and trimmed
+// after a large file. Tokens of a List refer to theirs, a file lexed to a List leaves them to its tokens.
+//
+// A lexer is confined to the thread it belongs to, and taken out of the pool while it lexes a file (so that a file
+// lexed from within the lexing of another, e.g. by a listener, gets a lexer of its own). The pool can therefore be
+// shared by all the workers of an executor. Virtual threads only live for a task, so each of them ends up with a lexer
+// of its own: they are safe to use, but the reuse only pays off on platform threads that lex many files.
+public final class LexerPool {
+  final LexerOptions options;
+  private final ThreadLocal<Lexer> lexers = new ThreadLocal<>();
+
+  public LexerPool() {
+    this(LexerOptions.DEFAULT);
+  }
+
+  public LexerPool(LexerOptions options) {
+    this.options = options;
+  }
+
+  public List<Token> lex(String fileName, CharSequence input) {
+    Lexer lexer = this.acquire();
+    try {
+      lexer.reset(fileName, input);
+      return lexer.lex();
+    } finally {
+      this.release(lexer);
+    }
+  }
+
+  // lex lexes the UTF-8 encoded bytes between the position and the limit of input.
+  public List<Token> lex(String fileName, ByteBuffer input) {
+    Lexer lexer = this.acquire();
+    try {
+      lexer.reset(fileName, input);
+      return lexer.lex();
+    } finally {
+      this.release(lexer);
+    }
+  }
+
+  // lex lexes the UTF-8 encoded file at path, which is mapped in memory.
+  public List<Token> lex(Path path) throws IOException {
+    Lexer lexer = this.acquire();
+    try {
+      lexer.reset(path);
+      return lexer.lex();
+    } finally {
+      this.release(lexer);
+    }
+  }
+
+  public TokenBuffer lexToBuffer(String fileName, CharSequence input) {
+    Lexer lexer = this.acquire();
+    try {
+      lexer.reset(fileName, input);
+      return lexer.lexToBuffer();
+    } finally {
+      this.release(lexer);
+    }
+  }
+
+  public TokenBuffer lexToBuffer(Path path) throws IOException {
+    Lexer lexer = this.acquire();
+    try {
+      lexer.reset(path);
+      return lexer.lexToBuffer();
+    } finally {
+      this.release(lexer);
+    }
+  }
+
+  // acquire takes the lexer of the current thread out of the pool, or makes one if there is none.
+  private Lexer acquire() {
+    Lexer lexer = this.lexers.get();
+    if (lexer == null) {
+      return new Lexer(this.options);
+    }
+    this.lexers.set(null);
+    return lexer;
+  }
+
+  // release puts lexer back in the pool as the lexer of the current thread, without its input.
+  private void release(Lexer lexer) {
+    lexer.release();
+    this.lexers.set(lexer);
+  }
+
+  // lexer returns the lexer of the current thread in the pool, if any.
+  Lexer lexer() {
+    return this.lexers.get();
+  }
+}
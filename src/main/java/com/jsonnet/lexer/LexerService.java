@@ -0,0 +1,219 @@
+package com.jsonnet.lexer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+// ---------------------------------------------------------------------------------------------------------------------
+// LexerService lexes many files concurrently, e.g. all the vendored files of a build. Files are lexed on an executor,
+// one Lexer per file, and the results are handed out in the order the files are done.
+//
+// At most maxInFlight files are being lexed or waiting to be picked up at any time: a new file is only submitted when
+// a result is taken, so the memory held by results is bounded however many files there are.
+//
+// The state the lexers share is read-only (the character class and keyword tables) or thread-safe (the interner of
+// identifiers), so any number of files can be lexed at once.
+public class LexerService implements AutoCloseable {
+  private static final AtomicInteger threadNumber = new AtomicInteger();
+
+  final ExecutorService executor;
+  final boolean ownsExecutor; // Whether the executor was made by the service, and is shut down by close()
+  final LexerOptions options;
+  final LexerPool lexers; // The lexer of each worker thread, reused from file to file
+  final int maxInFlight;
+
+  private LexerService(Builder builder) {
+    this.ownsExecutor = builder.executor == null;
+    this.executor = this.ownsExecutor ? defaultExecutor() : builder.executor;
+    this.options = builder.options;
+    this.lexers = new LexerPool(builder.options);
+    this.maxInFlight = builder.maxInFlight;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  // defaultExecutor returns a virtual thread per task executor if the runtime has virtual threads, and otherwise a
+  // pool of one daemon thread per processor.
+  static ExecutorService defaultExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      ThreadFactory factory = r -> {
+        Thread t = new Thread(r, "jsonnet-lexer-" + threadNumber.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      };
+      return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), factory);
+    }
+  }
+
+  // lex lexes the files and returns their results as the files are done. The files are submitted as the results are
+  // taken from the iterator.
+  public Iterator<Result> lex(Iterable<Path> files) {
+    return new Results(files.iterator());
+  }
+
+  // lexTree lexes the .jsonnet and .libsonnet files under root, see lex.
+  public Iterator<Result> lexTree(Path root) throws IOException {
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(root)) {
+      files = paths.filter(p -> {
+        String name = p.getFileName().toString();
+        return (name.endsWith(".jsonnet") || name.endsWith(".libsonnet")) && Files.isRegularFile(p);
+      }).sorted().collect(Collectors.toList());
+    }
+    return this.lex(files);
+  }
+
+  // close shuts the executor down, if the service made it.
+  @Override
+  public void close() {
+    if (this.ownsExecutor) {
+      this.executor.shutdown();
+    }
+  }
+
+  // -------------------------------------------------------------------------------------------------------------------
+  // Result is the outcome of lexing one file: either its tokens or the error that stopped the lexing.
+  public static final class Result {
+    private final Path path;
+    private final List<Token> tokens;
+    private final Throwable error;
+
+    Result(Path path, List<Token> tokens, Throwable error) {
+      this.path = path;
+      this.tokens = tokens;
+      this.error = error;
+    }
+
+    public Path path() {
+      return this.path;
+    }
+
+    public boolean isSuccess() {
+      return this.error == null;
+    }
+
+    // tokens returns the tokens of the file, or throws the error that stopped the lexing, wrapped in an
+    // IllegalStateException if it is an IOException.
+    public List<Token> tokens() {
+      if (this.error instanceof RuntimeException) {
+        throw (RuntimeException) this.error;
+      }
+      if (this.error instanceof Error) {
+        throw (Error) this.error;
+      }
+      if (this.error != null) {
+        throw new IllegalStateException("Could not read " + this.path, this.error);
+      }
+      return this.tokens;
+    }
+
+    // error returns the error that stopped the lexing (an IOException or a StaticErrorException, or whatever else was
+    // thrown, e.g. a StackOverflowError on a deeply nested file), or null.
+    public Throwable error() {
+      return this.error;
+    }
+  }
+
+  // -------------------------------------------------------------------------------------------------------------------
+  // Results submits the files as results are taken, keeping at most maxInFlight of them between the two.
+  private final class Results implements Iterator<Result> {
+    private final Iterator<Path> files;
+    private final BlockingQueue<Result> done = new LinkedBlockingQueue<>();
+    private int inFlight; // Number of files submitted whose result was not taken yet
+
+    Results(Iterator<Path> files) {
+      this.files = files;
+    }
+
+    @Override
+    public boolean hasNext() {
+      this.submit();
+      return this.inFlight > 0;
+    }
+
+    @Override
+    public Result next() {
+      if (!this.hasNext()) {
+        throw new NoSuchElementException();
+      }
+      try {
+        Result result = this.done.take();
+        this.inFlight--;
+        return result;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for a file to be lexed", e);
+      }
+    }
+
+    private void submit() {
+      while (this.inFlight < LexerService.this.maxInFlight && this.files.hasNext()) {
+        Path path = this.files.next();
+        LexerService.this.executor.execute(() -> this.done.add(LexerService.this.lexFile(path)));
+        this.inFlight++;
+      }
+    }
+  }
+
+  // lexFile lexes the file at path. Whatever it throws ends up in the result, so that every file submitted gets one and
+  // the iterator never waits for a file that failed.
+  Result lexFile(Path path) {
+    try {
+      return new Result(path, Collections.unmodifiableList(this.lexers.lex(path)), null);
+    } catch (Throwable e) {
+      return new Result(path, null, e);
+    }
+  }
+
+  // -------------------------------------------------------------------------------------------------------------------
+  public static class Builder {
+    private ExecutorService executor;
+    private LexerOptions options = LexerOptions.DEFAULT;
+    private int maxInFlight = 4 * Runtime.getRuntime().availableProcessors();
+
+    private Builder() {
+    }
+
+    // executor sets the executor the files are lexed on. It is not shut down by the service. By default the service
+    // uses virtual threads if the runtime has them, and a thread per processor otherwise.
+    public Builder executor(ExecutorService executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    public Builder options(LexerOptions options) {
+      this.options = options;
+      return this;
+    }
+
+    // maxInFlight sets how many files at most are being lexed or have a result waiting to be taken.
+    public Builder maxInFlight(int maxInFlight) {
+      if (maxInFlight <= 0) {
+        throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+      }
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    public LexerService build() {
+      return new LexerService(this);
+    }
+  }
+}
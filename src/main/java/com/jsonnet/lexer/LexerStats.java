@@ -0,0 +1,120 @@
+package com.jsonnet.lexer;
+
+import com.jsonnet.lexer.fodder.FodderKind;
+
+
+// LexerStats holds the statistics of the lexing of a file, as reported to a LexerListener. They are only gathered
+// while a listener is set.
+public final class LexerStats {
+  private static final TokenKind[] kinds = TokenKind.values();
+  private static final FodderKind[] fodderKinds = FodderKind.values();
+
+  final String fileName;
+  final long startNanos; // System.nanoTime() when the lexer was made
+  final int[] tokens = new int[kinds.length]; // Number of tokens of each kind
+  final int[] fodder = new int[fodderKinds.length]; // Number of fodder elements of each kind
+  int largestTextBlock; // Length of the data of the largest text block, in chars
+  long nanos;
+  long bytes;
+  int runes;
+
+  LexerStats(String fileName) {
+    this.fileName = fileName;
+    this.startNanos = System.nanoTime();
+  }
+
+  // finish works out the size of source and the time the lexing took, once the whole source was lexed.
+  void finish(Source source) {
+    this.nanos = System.nanoTime() - this.startNanos;
+    if (source instanceof ReaderSource) {
+      // A stream is not held as a whole, it was measured as it was read
+      this.bytes = ((ReaderSource) source).bytes;
+      this.runes = ((ReaderSource) source).runes;
+      return;
+    }
+    long bytes = 0;
+    int runes = 0;
+    for (int i = 0, length = source.length(); i < length; runes++) {
+      int unit = source.unitAt(i);
+      if (unit < 0x80) {
+        bytes++;
+        i++;
+        continue;
+      }
+      int rune = source.runeAt(i);
+      bytes += rune < 0x800 ? 2 : rune < 0x10000 ? 3 : 4;
+      i += source.runeLength(i);
+    }
+    // The bytes of an UTF-8 source are its code units, even where they are not valid UTF-8
+    this.bytes = source instanceof Utf8Source ? source.length() : bytes;
+    this.runes = runes;
+  }
+
+  public String fileName() {
+    return this.fileName;
+  }
+
+  // bytes returns the size of the file in UTF-8.
+  public long bytes() {
+    return this.bytes;
+  }
+
+  // runes returns the number of runes (code points) of the file.
+  public int runes() {
+    return this.runes;
+  }
+
+  // tokens returns the number of tokens of the file, the end of file token included.
+  public int tokens() {
+    int n = 0;
+    for (int count : this.tokens) {
+      n += count;
+    }
+    return n;
+  }
+
+  public int tokens(TokenKind kind) {
+    return this.tokens[kind.ordinal()];
+  }
+
+  // fodder returns the number of fodder elements of the file. Fodder is only counted when it is captured.
+  public int fodder() {
+    int n = 0;
+    for (int count : this.fodder) {
+      n += count;
+    }
+    return n;
+  }
+
+  public int fodder(FodderKind kind) {
+    return this.fodder[kind.ordinal()];
+  }
+
+  // largestTextBlock returns the length of the largest ||| text block of the file, in chars of its data.
+  public int largestTextBlock() {
+    return this.largestTextBlock;
+  }
+
+  // nanos returns the wall time from the making of the lexer to the end of the file. When tokens are pulled one at a
+  // time, it includes the time spent between the pulls.
+  public long nanos() {
+    return this.nanos;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(this.fileName).append(": ").append(this.bytes).append(" bytes, ").append(this.runes).append(" runes, ")
+        .append(this.tokens()).append(" tokens {");
+    String sep = "";
+    for (TokenKind kind : kinds) {
+      if (this.tokens[kind.ordinal()] > 0) {
+        sb.append(sep).append(kind.name()).append(": ").append(this.tokens[kind.ordinal()]);
+        sep = ", ";
+      }
+    }
+    sb.append("}, ").append(this.fodder()).append(" fodder, largest text block ").append(this.largestTextBlock)
+        .append(", ").append(this.nanos / 1000).append(" us");
+    return sb.toString();
+  }
+}
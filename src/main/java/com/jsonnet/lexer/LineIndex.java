@@ -0,0 +1,154 @@
+package com.jsonnet.lexer;
+
+import java.util.Arrays;
+
+
+// LineIndex records where the lines of a source start, as the lexer goes over them, so that the line and column of an
+// offset can be worked out when they are asked for (e.g. for an error message) instead of being tracked on every rune.
+//
+// Columns are counted in runes. A line is marked wide once the lexer saw a rune of more than one code unit on it:
+// columns on the other lines are plain differences of offsets, columns on wide lines are counted rune by rune.
+final class LineIndex {
+  // A reset index whose arrays grew past this many lines drops them, so that a lexer kept for many inputs (see
+  // LexerPool) doesn't hold on to the arrays of the largest one.
+  static final int maxRetainedLines = 1 << 16;
+
+  Source source;
+  private int firstLine; // Line number of the first line of the index
+  private int firstColumn; // Column of the start of the first line, which may not be the start of a real line
+  private int[] starts = new int[64]; // Offset of the start of each line
+  private long[] wide = new long[1]; // Bit i is set if line i is wide
+  private int size; // Number of lines
+  private Column last; // The last column counted on a wide line
+
+  LineIndex(Source source) {
+    this(source, 0, 1, 1);
+  }
+
+  // LineIndex makes an index whose first line starts at offset, with the given line number and column.
+  LineIndex(Source source, int offset, int line, int column) {
+    this.source = source;
+    this.firstLine = line;
+    this.firstColumn = column;
+    this.starts[0] = offset;
+    this.size = 1;
+  }
+
+  // addLine records a line starting at offset, unless it is recorded already (the lexer may go over a newline twice
+  // when it steps back).
+  void addLine(int offset) {
+    if (offset <= this.starts[this.size - 1]) {
+      return;
+    }
+    if (this.size == this.starts.length) {
+      this.starts = Arrays.copyOf(this.starts, this.size * 2);
+    }
+    if (this.size >> 6 == this.wide.length) {
+      this.wide = Arrays.copyOf(this.wide, this.wide.length * 2);
+    }
+    this.starts[this.size++] = offset;
+  }
+
+  // markWide marks the line of offset as wide.
+  void markWide(int offset) {
+    int i = this.index(offset);
+    this.wide[i >> 6] |= 1L << i;
+  }
+
+  // lastLine returns the line number of the last line recorded.
+  int lastLine() {
+    return this.firstLine + this.size - 1;
+  }
+
+  // line returns the line number of offset.
+  int line(int offset) {
+    return this.firstLine + this.index(offset);
+  }
+
+  // column returns the column of offset, in runes.
+  int column(int offset) {
+    int i = this.index(offset);
+    int column = i == 0 ? this.firstColumn : 1;
+    if ((this.wide[i >> 6] & (1L << i)) == 0) {
+      return column + offset - this.starts[i];
+    }
+    // Count the runes from the start of the line, or from the last column counted on it if offset is past it, so that
+    // asking for the columns of a long line in order is linear
+    int from = this.starts[i];
+    Column last = this.last;
+    if (last != null && last.index == i && last.offset <= offset) {
+      from = last.offset;
+      column = last.column;
+    }
+    while (from < offset) {
+      from += this.source.runeLength(from);
+      column++;
+    }
+    this.last = new Column(i, offset, column);
+    return column;
+  }
+
+  // rebase makes the index start at offset, with the line and column it has now, and forgets about the lines before
+  // it. It is for a lexer which won't ask about the source before offset anymore (e.g. because it is read from a
+  // stream, see ReaderSource): the index then only holds the lines since, and never counts columns from before offset.
+  void rebase(int offset) {
+    int line = this.line(offset);
+    int column = this.column(offset);
+    Arrays.fill(this.wide, 0, (this.size + 63) >> 6, 0);
+    this.firstLine = line;
+    this.firstColumn = column;
+    this.starts[0] = offset;
+    this.size = 1;
+    this.last = null;
+  }
+
+  // reset empties the index for another source, as a new index would be, reusing its arrays.
+  void reset(Source source) {
+    this.source = source;
+    if (this.starts.length > maxRetainedLines) {
+      this.starts = new int[64];
+      this.wide = new long[1];
+    } else {
+      Arrays.fill(this.wide, 0, (this.size + 63) >> 6, 0);
+    }
+    this.firstLine = 1;
+    this.firstColumn = 1;
+    this.starts[0] = 0;
+    this.size = 1;
+    this.last = null;
+  }
+
+  // capacity returns the number of lines the index has room for.
+  int capacity() {
+    return this.starts.length;
+  }
+
+  // location returns the location of offset.
+  Location location(int offset) {
+    return new Location(this.line(offset), this.column(offset));
+  }
+
+  // index returns the index of the line of offset.
+  private int index(int offset) {
+    if (offset >= this.starts[this.size - 1]) {
+      return this.size - 1; // The lexer mostly asks about the line it is on
+    }
+    int i = Arrays.binarySearch(this.starts, 0, this.size, offset);
+    return i >= 0 ? i : Math.max(0, -i - 2);
+  }
+
+  // -------------------------------------------------------------------------------------------------------------------
+  // Column is the column of an offset on a line. It is immutable, so that threads asking for columns at once at worst
+  // count from the start of the line again.
+  private static final class Column {
+    final int index;
+    final int offset;
+    final int column;
+
+    Column(int index, int offset, int column) {
+      this.index = index;
+      this.offset = offset;
+      this.column = column;
+    }
+  }
+}
@@ -1,10 +1,14 @@
 package com.jsonnet.lexer;
 
-// LocationRange represents a range of a source file.
+// LocationRange represents a range of a source file. A range made by the lexer only holds offsets until its locations
+// are asked for, they are then worked out from the line index of the source.
 class LocationRange {
   String fileName;
-  Location begin;
-  Location end;
+  private Location begin;
+  private Location end;
+  private volatile LineIndex lines; // The index the locations are worked out from, until they are
+  private int beginOffset;
+  private int endOffset;
 
   public LocationRange(String fileName, Location begin, Location end) {
     this.fileName = fileName;
@@ -12,9 +16,37 @@ class LocationRange {
     this.end = end;
   }
 
+  // LocationRange makes the range between the offsets beginOffset and endOffset of the source of lines.
+  LocationRange(String fileName, LineIndex lines, int beginOffset, int endOffset) {
+    this.fileName = fileName;
+    this.lines = lines;
+    this.beginOffset = beginOffset;
+    this.endOffset = endOffset;
+  }
+
+  Location begin() {
+    this.resolve();
+    return this.begin;
+  }
+
+  Location end() {
+    this.resolve();
+    return this.end;
+  }
+
+  // resolve works out the locations of the range if it was not done yet, and drops the line index.
+  void resolve() {
+    LineIndex lines = this.lines;
+    if (lines != null) {
+      this.begin = lines.location(this.beginOffset);
+      this.end = lines.location(this.endOffset);
+      this.lines = null;
+    }
+  }
+
   // IsSet returns if this LocationRange has been set.
   boolean isSet() {
-    return this.begin.isSet();
+    return this.begin().isSet();
   }
 
   @Override
@@ -26,12 +58,14 @@ class LocationRange {
     if (this.fileName != null && this.fileName.length() > 0) {
       filePrefix = this.fileName + ":";
     }
-    if (this.begin.line == this.end.line) {
-      if (this.begin.column == this.end.column) {
-        return String.format("%s%s", filePrefix, this.begin);
+    Location begin = this.begin();
+    Location end = this.end();
+    if (begin.line == end.line) {
+      if (begin.column == end.column) {
+        return String.format("%s%s", filePrefix, begin);
       }
-      return String.format("%s%s-%s", filePrefix, this.begin, this.end.column);
+      return String.format("%s%s-%s", filePrefix, begin, end.column);
     }
-    return String.format("%s(%s)-(%s)", filePrefix, this.begin, this.end);
+    return String.format("%s(%s)-(%s)", filePrefix, begin, end);
   }
 }
@@ -0,0 +1,213 @@
+package com.jsonnet.lexer;
+
+import java.math.BigInteger;
+
+
+// NumberParser works out the value of number literals. The lexer gathers the digits of a literal while it scans it (see
+// Lexer.lexNumber), parse does the same straight from the code units of a source. The result is the same double as
+// Double.parseDouble gives, bit for bit, but the common cases don't need a String:
+// - a mantissa of at most 2^53 times a power of ten of at most 22 is computed exactly with one double operation
+//   (Clinger's fast path), which covers integers such as ports and replica counts;
+// - other literals go through the Eisel-Lemire algorithm, as in Go's strconv, which multiplies the mantissa by a 128-bit
+//   approximation of the power of ten and gives up in the rare cases where the approximation is not close enough;
+// - only then, or for mantissas of more than 19 digits whose rounding is not settled, is Double.parseDouble called.
+//
+// The literal is assumed to be a valid jsonnet number, as checked by the lexer: digits, an optional fraction and an
+// optional exponent, without a sign.
+final class NumberParser {
+  static final int maxMantissaDigits = 19; // Any 19 digits fit in an unsigned long
+  private static final long maxExactMantissa = 1L << 53;
+  private static final double[] exactPowersOfTen = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+      1e21, 1e22};
+
+  private NumberParser() {
+  }
+
+  // parse returns the value of the number literal made of the code units of source between start and end.
+  static double parse(Source source, int start, int end) {
+    long mantissa = 0; // The first significant digits, as an unsigned long
+    int mantissaDigits = 0;
+    int digits = 0; // Number of significant digits
+    int decimalPoint = 0; // Position of the decimal point, relative to the first significant digit
+    boolean sawDot = false;
+    boolean truncated = false; // Whether non-zero digits were left out of the mantissa
+    int i = start;
+    for (; i < end; i++) {
+      int unit = source.unitAt(i);
+      if (unit == '.') {
+        sawDot = true;
+        decimalPoint = digits;
+        continue;
+      }
+      if (unit < '0' || unit > '9') {
+        break;
+      }
+      if (unit == '0' && digits == 0) {
+        // Leading zeros are not significant, but move the decimal point
+        decimalPoint--;
+        continue;
+      }
+      digits++;
+      if (mantissaDigits < maxMantissaDigits) {
+        mantissa = mantissa * 10 + (unit - '0');
+        mantissaDigits++;
+      } else if (unit != '0') {
+        truncated = true;
+      }
+    }
+    if (!sawDot) {
+      decimalPoint = digits;
+    }
+    if (i < end) {
+      // The exponent, after 'e' or 'E'. Exponents too large to matter are capped, to not overflow.
+      i++;
+      int sign = 1;
+      if (source.unitAt(i) == '+' || source.unitAt(i) == '-') {
+        sign = source.unitAt(i) == '-' ? -1 : 1;
+        i++;
+      }
+      int exponent = 0;
+      for (; i < end; i++) {
+        if (exponent < 10000) {
+          exponent = exponent * 10 + (source.unitAt(i) - '0');
+        }
+      }
+      decimalPoint += sign * exponent;
+    }
+    return value(mantissa, decimalPoint - mantissaDigits, truncated, source, start, end);
+  }
+
+  // value returns the value of a number literal from its parts: the first (at most 19) significant digits of its
+  // mantissa, as an unsigned long, and the power of ten they are multiplied by. truncated tells that non-zero digits
+  // were left out of the mantissa. In the rare cases the parts are not enough, the literal made of the code units of
+  // source between start and end is parsed again with Double.parseDouble.
+  static double value(long mantissa, int exp10, boolean truncated, Source source, int start, int end) {
+    if (mantissa == 0) {
+      return 0;
+    }
+    if (!truncated && mantissa >= 0 && mantissa <= maxExactMantissa) {
+      if (exp10 == 0) {
+        return mantissa;
+      }
+      if (exp10 > 0 && exp10 <= 22) {
+        return mantissa * exactPowersOfTen[exp10];
+      }
+      if (exp10 < 0 && exp10 >= -22) {
+        return mantissa / exactPowersOfTen[-exp10];
+      }
+    }
+
+    double value = eiselLemire(mantissa, exp10);
+    if (truncated && !Double.isNaN(value)) {
+      // The digits left out put the value between mantissa and mantissa + 1, both must round the same way
+      if (eiselLemire(mantissa + 1, exp10) != value) {
+        value = Double.NaN;
+      }
+    }
+    if (Double.isNaN(value)) {
+      value = Double.parseDouble(source.slice(start, end));
+    }
+    return value;
+  }
+
+  // eiselLemire returns mantissa (unsigned, non-zero) * 10^exp10 rounded to the nearest double, or NaN if it can't be
+  // worked out for sure from the 128-bit approximation of the power of ten.
+  static double eiselLemire(long mantissa, int exp10) {
+    if (exp10 < PowersOfTen.minExp10 || exp10 > PowersOfTen.maxExp10) {
+      return Double.NaN;
+    }
+    // Normalization
+    int clz = Long.numberOfLeadingZeros(mantissa);
+    mantissa <<= clz;
+    long retExp2 = ((217706L * exp10) >> 16) + 64 + 1023 - clz;
+
+    // Multiplication
+    int index = exp10 - PowersOfTen.minExp10;
+    long powHi = PowersOfTen.table[2 * index];
+    long powLo = PowersOfTen.table[2 * index + 1];
+    long xHi = multiplyHigh(mantissa, powHi);
+    long xLo = mantissa * powHi;
+
+    // Wider approximation
+    if ((xHi & 0x1FF) == 0x1FF && Long.compareUnsigned(xLo + mantissa, mantissa) < 0) {
+      long yHi = multiplyHigh(mantissa, powLo);
+      long yLo = mantissa * powLo;
+      long mergedHi = xHi;
+      long mergedLo = xLo + yHi;
+      if (Long.compareUnsigned(mergedLo, xLo) < 0) {
+        mergedHi++;
+      }
+      if ((mergedHi & 0x1FF) == 0x1FF && mergedLo + 1 == 0 && Long.compareUnsigned(yLo + mantissa, mantissa) < 0) {
+        return Double.NaN;
+      }
+      xHi = mergedHi;
+      xLo = mergedLo;
+    }
+
+    // Shifting to 54 bits
+    long msb = xHi >>> 63;
+    long retMantissa = xHi >>> (msb + 9);
+    retExp2 -= 1 ^ msb;
+
+    // Half-way ambiguity
+    if (xLo == 0 && (xHi & 0x1FF) == 0 && (retMantissa & 3) == 1) {
+      return Double.NaN;
+    }
+
+    // From 54 to 53 bits
+    retMantissa += retMantissa & 1;
+    retMantissa >>>= 1;
+    if ((retMantissa >>> 53) > 0) {
+      retMantissa >>>= 1;
+      retExp2 += 1;
+    }
+    // Subnormals, infinities and NaNs are left to Double.parseDouble
+    if (retExp2 <= 0 || retExp2 >= 0x7FF) {
+      return Double.NaN;
+    }
+    return Double.longBitsToDouble(retExp2 << 52 | retMantissa & 0x000FFFFFFFFFFFFFL);
+  }
+
+  // multiplyHigh returns the high 64 bits of the unsigned 128-bit product of a and b.
+  private static long multiplyHigh(long a, long b) {
+    long aLo = a & 0xFFFFFFFFL;
+    long aHi = a >>> 32;
+    long bLo = b & 0xFFFFFFFFL;
+    long bHi = b >>> 32;
+    long loLo = aLo * bLo;
+    long hiLo = aHi * bLo;
+    long loHi = aLo * bHi;
+    long cross = (loLo >>> 32) + (hiLo & 0xFFFFFFFFL) + loHi;
+    return aHi * bHi + (hiLo >>> 32) + (cross >>> 32);
+  }
+
+  // PowersOfTen holds the 128-bit approximations of the powers of ten, it is only made once a literal needs it.
+  static final class PowersOfTen {
+    static final int minExp10 = -348;
+    static final int maxExp10 = 347;
+    // The high and low 64 bits of 10^exp10, rounded down to its 128 most significant bits, for every exp10
+    static final long[] table = new long[2 * (maxExp10 - minExp10 + 1)];
+
+    static {
+      BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+      for (int exp10 = minExp10; exp10 <= maxExp10; exp10++) {
+        BigInteger power = BigInteger.TEN.pow(Math.abs(exp10));
+        BigInteger approximation;
+        if (exp10 >= 0) {
+          approximation = power.bitLength() > 128 ? power.shiftRight(power.bitLength() - 128)
+              : power.shiftLeft(128 - power.bitLength());
+        } else {
+          // 2^k / 10^-exp10 has 128 bits, as 10^-exp10 is not a power of two
+          approximation = BigInteger.ONE.shiftLeft(power.bitLength() + 127).divide(power);
+        }
+        int index = exp10 - minExp10;
+        table[2 * index] = approximation.shiftRight(64).longValue();
+        table[2 * index + 1] = approximation.and(mask).longValue();
+      }
+    }
+
+    private PowersOfTen() {
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package com.jsonnet.lexer;
+
+// Operator is the operator an operator token stands for. The lexer works it out from the runes of the token, so that
+// a parser can switch on it rather than compare the data of the token.
+//
+// Binary operators have a precedence, the lower it is the tighter the operator binds (as in the reference
+// implementation). Unary operators all bind tighter than any binary operator. '+' and '-' are both unary and binary,
+// which of the two a token is depends on where it is in an expression.
+public enum Operator {
+  // Unary only
+  opNot("!", 0, true),
+  opBitwiseNot("~", 0, true),
+
+  // Binary, by precedence
+  opMult("*", 5),
+  opDiv("/", 5),
+  opPercent("%", 5),
+
+  opPlus("+", 6, true),
+  opMinus("-", 6, true),
+
+  opShiftL("<<", 7),
+  opShiftR(">>", 7),
+
+  opGreater(">", 8),
+  opGreaterEq(">=", 8),
+  opLess("<", 8),
+  opLessEq("<=", 8),
+  opIn("in", 8), // The operator of the keyword token tokenIn
+
+  opManifestEqual("==", 9),
+  opManifestUnequal("!=", 9),
+
+  opBitwiseAnd("&", 10),
+  opBitwiseXor("^", 11),
+  opBitwiseOr("|", 12),
+
+  opAnd("&&", 13),
+  opOr("||", 14),
+
+  // Not an operator of expressions (e.g. local x = 1), but lexed as an operator token
+  opAssign("=", 0);
+
+  public static final int unaryPrecedence = 4; // The precedence of every unary operator
+  public static final int maxPrecedence = 14; // The precedence of the operator which binds the loosest
+
+  private final String text;
+  private final int precedence; // The precedence as a binary operator, 0 if it isn't one
+  private final boolean unary;
+
+  Operator(String text, int precedence) {
+    this(text, precedence, false);
+  }
+
+  Operator(String text, int precedence, boolean unary) {
+    this.text = text;
+    this.precedence = precedence;
+    this.unary = unary;
+  }
+
+  public boolean isBinary() {
+    return this.precedence > 0;
+  }
+
+  public boolean isUnary() {
+    return this.unary;
+  }
+
+  // precedence returns the precedence of the operator as a binary operator, or 0 if it is not a binary operator.
+  public int precedence() {
+    return this.precedence;
+  }
+
+  // of returns the operator made of the code units of source between start and end, or null if they make up none (e.g.
+  // the run of symbols "<==>", which only the parser rejects). Every operator is made of one or two ASCII code units.
+  static Operator of(Source source, int start, int end) {
+    switch (end - start) {
+      case 1:
+        return of(source.unitAt(start));
+      case 2:
+        return of(source.unitAt(start), source.unitAt(start + 1));
+      default:
+        return null;
+    }
+  }
+
+  // of returns the operator of the data of an operator token, or null if it makes up none.
+  static Operator of(String data) {
+    return of(new StringSource(data), 0, data.length());
+  }
+
+  private static Operator of(int unit) {
+    switch (unit) {
+      case '!':
+        return opNot;
+      case '~':
+        return opBitwiseNot;
+      case '*':
+        return opMult;
+      case '/':
+        return opDiv;
+      case '%':
+        return opPercent;
+      case '+':
+        return opPlus;
+      case '-':
+        return opMinus;
+      case '>':
+        return opGreater;
+      case '<':
+        return opLess;
+      case '&':
+        return opBitwiseAnd;
+      case '^':
+        return opBitwiseXor;
+      case '|':
+        return opBitwiseOr;
+      case '=':
+        return opAssign;
+      default:
+        return null;
+    }
+  }
+
+  private static Operator of(int first, int second) {
+    switch (second) {
+      case '=':
+        switch (first) {
+          case '>':
+            return opGreaterEq;
+          case '<':
+            return opLessEq;
+          case '=':
+            return opManifestEqual;
+          case '!':
+            return opManifestUnequal;
+          default:
+            return null;
+        }
+      case '<':
+        return first == '<' ? opShiftL : null;
+      case '>':
+        return first == '>' ? opShiftR : null;
+      case '&':
+        return first == '&' ? opAnd : null;
+      case '|':
+        return first == '|' ? opOr : null;
+      default:
+        return null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return this.text;
+  }
+}
@@ -0,0 +1,259 @@
+package com.jsonnet.lexer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+
+// ---------------------------------------------------------------------------------------------------------------------
+// ParallelLexer lexes a large input on several threads. The input is split into chunks which start right after a
+// newline, and every chunk is lexed speculatively on a ForkJoinPool as if a token started there, from the line the
+// chunk starts on (newlines are counted in parallel first). A chunk lexer goes on until a token ends at or past the
+// start of the next chunk.
+//
+// The start of a chunk may actually be inside a string, a /* */ comment or a ||| text block, in which case its
+// speculative tokens are wrong (or it failed to lex at all). The chunks are therefore checked in order: a chunk is
+// right from the first of its tokens that ends where a token of the right stream ends, as the lexer holds no state
+// between tokens. If the tokens never line up, the chunk is lexed again from the end of the right stream. The merged
+// tokens are the same as the ones of Lexer.lex().
+public class ParallelLexer {
+  static final int defaultChunkSize = 256 << 10;
+
+  final String fileName;
+  final Source source;
+  final LexerOptions options;
+  final int chunkSize; // Approximate size of the chunks, in code units of the source
+
+  public ParallelLexer(String fileName, String input) {
+    this(fileName, new StringSource(input), LexerOptions.DEFAULT, defaultChunkSize);
+  }
+
+  public ParallelLexer(String fileName, String input, LexerOptions options, int chunkSize) {
+    this(fileName, new StringSource(input), options, chunkSize);
+  }
+
+  // ParallelLexer lexes the UTF-8 encoded bytes between the position and the limit of input.
+  public ParallelLexer(String fileName, ByteBuffer input) {
+    this(fileName, new Utf8Source(input), LexerOptions.DEFAULT, defaultChunkSize);
+  }
+
+  public ParallelLexer(String fileName, ByteBuffer input, LexerOptions options, int chunkSize) {
+    this(fileName, new Utf8Source(input), options, chunkSize);
+  }
+
+  ParallelLexer(String fileName, Source source, LexerOptions options, int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+    }
+    this.fileName = fileName;
+    this.source = source;
+    this.options = options;
+    this.chunkSize = chunkSize;
+  }
+
+  // lex lexes the whole input on the common pool, and returns all the tokens, the last one being the EOF token.
+  public List<Token> lex() {
+    return this.lex(ForkJoinPool.commonPool());
+  }
+
+  // lex lexes the whole input on pool, and returns all the tokens, the last one being the EOF token.
+  public List<Token> lex(ForkJoinPool pool) {
+    int[] starts = this.split();
+    int chunks = starts.length - 1;
+    if (chunks == 1) {
+      return new Lexer(this.fileName, this.source, this.options).lex();
+    }
+
+    // Count the newlines of every chunk so that each chunk lexer knows the line it starts on
+    int[] lines = new int[chunks + 1];
+    pool.invoke(new ForEach(0, chunks, c -> lines[c + 1] = this.countNewLines(starts[c], starts[c + 1])));
+    lines[0] = 1;
+    for (int c = 1; c <= chunks; c++) {
+      lines[c] += lines[c - 1];
+    }
+
+    Chunk[] results = new Chunk[chunks];
+    pool.invoke(new ForEach(0, chunks, c -> {
+      int limit = starts[c + 1] < this.source.length() ? starts[c + 1] : Integer.MAX_VALUE;
+      // Guess the number of tokens of the chunk from its size, at about one token per 5 code units
+      Chunk chunk = new Chunk(limit, (starts[c + 1] - starts[c]) / 5 + 16);
+      chunk.lex(this.lexer(starts[c], lines[c], 1));
+      results[c] = chunk;
+    }));
+    return this.merge(results);
+  }
+
+  // split returns the start offsets of the chunks, followed by the length of the source. Every chunk but the first
+  // starts right after a newline.
+  int[] split() {
+    int length = this.source.length();
+    int[] starts = new int[length / this.chunkSize + 2];
+    int chunks = 1;
+    for (int offset = this.chunkSize; offset < length; offset += this.chunkSize) {
+      int start = Math.max(offset, starts[chunks - 1] + 1);
+      while (start < length && this.source.unitAt(start - 1) != '\n') {
+        start++;
+      }
+      if (start < length) {
+        starts[chunks++] = start;
+        offset = start;
+      }
+    }
+    starts[chunks] = length;
+    return Arrays.copyOf(starts, chunks + 1);
+  }
+
+  private int countNewLines(int start, int end) {
+    int count = 0;
+    for (int offset = start; offset < end; offset++) {
+      if (this.source.unitAt(offset) == '\n') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private Lexer lexer(int offset, int lineNo, int column) {
+    Lexer lexer = new Lexer(this.fileName, this.source, this.options);
+    lexer.restart(offset, lineNo, column);
+    return lexer;
+  }
+
+  // merge puts the tokens of the chunks together, taking each chunk from where it lines up with the tokens before it
+  // and lexing again the chunks which don't.
+  private List<Token> merge(Chunk[] chunks) {
+    int size = 0;
+    for (Chunk chunk : chunks) {
+      size += chunk.size;
+    }
+    List<Token> merged = new ArrayList<>(size);
+    Chunk last = null; // The chunk the last merged token comes from
+    int index = -1; // Index of the last merged token in last
+    for (Chunk chunk : chunks) {
+      if (last != null && last.isDone(index)) {
+        break;
+      }
+      int end = last == null ? -1 : last.endOffset[index];
+      if (end >= chunk.limit) {
+        continue; // The right stream already goes past this chunk, e.g. a long comment
+      }
+      int from = -1; // Index of the token of the chunk after which its tokens are right
+      if (last != null) {
+        // The first token of the chunk which ends where the right stream ends, if any
+        from = Arrays.binarySearch(chunk.endOffset, 0, chunk.size, end);
+        if (from < 0) {
+          // Lex the chunk again, until it lines up with its speculative tokens or ends
+          Lexer lexer = this.lexer(end, last.endLine[index], last.endColumn[index]);
+          Chunk relexed = new Chunk(chunk.limit, 16);
+          while (!relexed.isDone(relexed.size - 1) && relexed.endOffset() < chunk.limit && from < 0) {
+            relexed.add(lexer.nextToken(), lexer);
+            from = Arrays.binarySearch(chunk.endOffset, 0, chunk.size, relexed.endOffset());
+          }
+          merged.addAll(relexed.tokens);
+          last = relexed;
+          index = relexed.size - 1;
+          if (relexed.isDone(index)) {
+            // The right stream reached the end of the input. A speculative token of the chunk may end at the same
+            // offset, but the rest of the chunk (its own EOF token included) is not a part of the stream.
+            break;
+          }
+          if (from < 0) {
+            continue;
+          }
+        }
+      }
+      if (from + 1 < chunk.size) {
+        merged.addAll(chunk.tokens.subList(from + 1, chunk.size));
+        last = chunk;
+        index = chunk.size - 1;
+      }
+      if (chunk.error != null) {
+        // The chunk is right up to the error, so lexing the whole input fails there too
+        throw chunk.error;
+      }
+    }
+    return merged;
+  }
+
+  // -------------------------------------------------------------------------------------------------------------------
+  // Chunk holds the tokens lexed for a chunk, together with the state of the lexer at the end of each of them.
+  static final class Chunk {
+    final int limit; // Offset at or past which the last token of the chunk must end
+    final List<Token> tokens;
+    int size;
+    int[] endOffset;
+    int[] endLine;
+    int[] endColumn;
+    StaticErrorException error; // The error which stopped the lexing of the chunk, if any
+
+    Chunk(int limit, int capacity) {
+      this.limit = limit;
+      this.tokens = new ArrayList<>(capacity);
+      this.endOffset = new int[capacity];
+      this.endLine = new int[capacity];
+      this.endColumn = new int[capacity];
+    }
+
+    // lex lexes tokens until one ends at or past the limit of the chunk, or until the EOF token or an error.
+    void lex(Lexer lexer) {
+      try {
+        while (!this.isDone(this.size - 1) && this.endOffset() < this.limit) {
+          this.add(lexer.nextToken(), lexer);
+        }
+      } catch (StaticErrorException e) {
+        this.error = e;
+      }
+    }
+
+    int endOffset() {
+      return this.size == 0 ? -1 : this.endOffset[this.size - 1];
+    }
+
+    // isDone returns whether the token at index i is the EOF token.
+    boolean isDone(int i) {
+      return i >= 0 && this.tokens.get(i).kind == TokenKind.tokenEndOfFile;
+    }
+
+    // add adds the token t that lexer just lexed.
+    void add(Token t, Lexer lexer) {
+      if (this.size == this.endOffset.length) {
+        this.endOffset = Arrays.copyOf(this.endOffset, this.size * 2);
+        this.endLine = Arrays.copyOf(this.endLine, this.size * 2);
+        this.endColumn = Arrays.copyOf(this.endColumn, this.size * 2);
+      }
+      this.tokens.add(t);
+      this.endOffset[this.size] = lexer.offset;
+      this.endLine[this.size] = lexer.line();
+      this.endColumn[this.size] = lexer.column();
+      this.size++;
+    }
+  }
+
+  // -------------------------------------------------------------------------------------------------------------------
+  // ForEach runs work for every index between from (inclusive) and to (exclusive), splitting the range in halves.
+  static final class ForEach extends RecursiveAction {
+    final int from;
+    final int to;
+    final IntConsumer work;
+
+    ForEach(int from, int to, IntConsumer work) {
+      this.from = from;
+      this.to = to;
+      this.work = work;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from == 1) {
+        this.work.accept(this.from);
+        return;
+      }
+      int mid = (this.from + this.to) >>> 1;
+      invokeAll(new ForEach(this.from, mid, this.work), new ForEach(mid, this.to, this.work));
+    }
+  }
+}
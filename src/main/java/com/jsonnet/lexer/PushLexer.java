@@ -0,0 +1,368 @@
+package com.jsonnet.lexer;
+
+import java.io.Reader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+// PushLexer lexes an input which is pushed to it in chunks as it arrives (e.g. the body of a request, read from the
+// network), where a Lexer over a Reader would pull it and block. Chunks of UTF-8 bytes are fed to it as they come,
+// and the tokens completed so far can be drained at any time, so that lexing overlaps with the transfer of the input
+// instead of waiting for the end of it.
+//
+// The lexer holds no state between the steps it lexes a token or a fodder element in, so a push lexer has little to
+// keep across chunks: when the input runs out in the middle of a step, what the step lexed is dropped, and the step is
+// lexed again once there is more input (see Lexer.rewindStep). So that a token spanning many chunks (e.g. a large text
+// block) is not lexed again after each of them, the push lexer keeps how far it scanned the input of the step for what
+// may end it (the */ of a comment, the quote of a string, the last line of a text block, ...), and only goes on with
+// the scan as chunks come in: the step is lexed again once that is found, i.e. as soon as the token may be complete.
+// As with a Reader, only the input from the end of the last token drained is held (see ReaderSource), and the tokens
+// are handed out detached from it.
+//
+// A push lexer is not thread safe. It can't go on once it threw a StaticErrorException.
+public final class PushLexer {
+  private static final NeedInput needInput = new NeedInput();
+  // What may end a step which ran out of input, i.e. what the input fed since is scanned for
+  private static final int endAny = 0; // Any more input, for a step which only needs a few more chars
+  private static final int endWhitespace = 1; // A rune which is not whitespace
+  private static final int endIdentifier = 2; // A rune which can't be a part of an identifier
+  private static final int endLine = 3; // A '\n', for a line comment
+  private static final int endComment = 4; // The */ of a C comment
+  private static final int endString = 5; // The quote, unless it is escaped
+  private static final int endVerbatim = 6; // The quote, unless it is doubled
+  private static final int endTextBlock = 7; // A line which doesn't start with the indent of the block
+
+  private final Lexer lexer;
+  private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  // The first bytes of a rune split across chunks. It is flipped and cleared through Buffer, as ByteBuffer only has its
+  // own flip() and clear() from Java 9 on, which would not link on Java 8.
+  private final ByteBuffer partial = ByteBuffer.allocate(8);
+  private char[] chars = new char[1024]; // The chars decoded, not read by the lexer yet between start and end
+  private int start;
+  private int end;
+  private int decoded; // Number of chars decoded so far, i.e. the offset of the end of the input fed so far
+  private boolean ended; // Whether all the input was fed
+  // The step of the lexer which ran out of input: where it starts, what may end it, and how far its input was scanned
+  // for that without finding it
+  private int step = -1;
+  private int ends;
+  private int scan;
+  private int quote; // The quote of a string
+  private int indentStart = -1; // Offset of the indent of the first line of a text block, -1 until it is known
+  private int indentLength;
+  private boolean lineStart; // Whether scan is at the start of a line of a text block
+
+  public PushLexer(String fileName) {
+    this(fileName, LexerOptions.DEFAULT);
+  }
+
+  public PushLexer(String fileName, LexerOptions options) {
+    this.lexer = new Lexer(fileName, new ReaderSource(new ChunkReader(), options.bufferSize), options);
+  }
+
+  public void feed(byte[] chunk) {
+    this.feed(ByteBuffer.wrap(chunk));
+  }
+
+  public void feed(byte[] chunk, int offset, int length) {
+    this.feed(ByteBuffer.wrap(chunk, offset, length));
+  }
+
+  // feed pushes the next chunk of the input, made of the UTF-8 encoded bytes between the position and the limit of
+  // chunk. A rune may be split across chunks. The bytes are decoded right away: chunk can be reused once feed returns.
+  public void feed(ByteBuffer chunk) {
+    if (this.ended) {
+      throw new IllegalStateException("Input fed after its end");
+    }
+    while (this.partial.position() > 0 && chunk.hasRemaining()) {
+      ((Buffer) this.partial.put(chunk.get())).flip();
+      this.decode(this.partial, false);
+      this.partial.compact();
+    }
+    this.decode(chunk, false);
+    this.partial.put(chunk); // The start of a rune whose other bytes are in the next chunk
+  }
+
+  // endOfInput tells that all of the input was fed. The tokens left, up to the EOF token, can then be drained.
+  public void endOfInput() {
+    if (this.ended) {
+      return;
+    }
+    ((Buffer) this.partial).flip();
+    this.decode(this.partial, true); // A rune cut short by the end of the input is malformed
+    ((Buffer) this.partial).clear();
+    this.ended = true;
+  }
+
+  // drainTokens lexes the input fed so far and returns the tokens it completed, in order. The last token is the EOF
+  // token once the end of the input was reached, there are no more tokens after it. A token at the end of the input
+  // fed so far is only complete once what follows it shows that it doesn't go on (e.g. an identifier at the end of a
+  // chunk may go on in the next one), or at the end of the input.
+  public List<Token> drainTokens() {
+    List<Token> tokens = new ArrayList<>();
+    if (!this.ended && this.step >= 0 && !this.mayEnd()) {
+      return tokens;
+    }
+    while (true) {
+      Token t;
+      try {
+        t = this.lexer.nextToken();
+      } catch (NeedInput e) {
+        this.lexer.rewindStep();
+        this.pending(this.lexer.stepStart);
+        return tokens;
+      }
+      if (t == null) {
+        return tokens;
+      }
+      tokens.add(t);
+    }
+  }
+
+  // pending records that the step of the lexer at start ran out of input, and works out what may end it from its first
+  // chars.
+  private void pending(int start) {
+    this.scan = this.decoded;
+    if (start == this.step) {
+      // What may have ended the step came in, but the step needs more still: only a few more chars, e.g. the rest of
+      // the ||| ending a text block
+      this.ends = endAny;
+      return;
+    }
+    this.step = start;
+    this.ends = endAny;
+    if (start >= this.decoded) {
+      return;
+    }
+    Source source = this.lexer.source;
+    int c = source.unitAt(start);
+    int next = start + 1 < this.decoded ? source.unitAt(start + 1) : -1;
+    if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+      this.ends = endWhitespace;
+      this.scan = start + 1;
+    } else if (c < 0x80 && Lexer.isIdentifierFirst(c)) {
+      this.ends = endIdentifier;
+      this.scan = start + 1;
+    } else if (c == '#' || c == '/' && next == '/') {
+      this.ends = endLine;
+      this.scan = start + 1;
+    } else if (c == '/' && next == '*') {
+      this.ends = endComment;
+      this.scan = start + 2;
+    } else if (c == '"' || c == '\'') {
+      this.ends = endString;
+      this.quote = c;
+      this.scan = start + 1;
+    } else if (c == '@' && (next == '"' || next == '\'')) {
+      this.ends = endVerbatim;
+      this.quote = next;
+      this.scan = start + 2;
+    } else if (c == '|' && start + 3 < this.decoded && next == '|' && source.unitAt(start + 2) == '|'
+        && source.unitAt(start + 3) == '\n') {
+      this.ends = endTextBlock;
+      this.indentStart = -1;
+      this.lineStart = true;
+      this.scan = start + 4;
+    }
+  }
+
+  // mayEnd returns whether the input fed since the step ran out of input may end it, going on with the scan of its
+  // input from where it stopped.
+  private boolean mayEnd() {
+    if (this.scan >= this.decoded) {
+      return false;
+    }
+    if (this.ends == endAny) {
+      return true;
+    }
+    Source source = this.lexer.source;
+    source.has(this.decoded - 1); // Read the input fed since into the window of the source
+    int end = this.decoded;
+    int i = this.scan;
+    switch (this.ends) {
+      case endWhitespace:
+        for (; i < end; i++) {
+          int c = source.unitAt(i);
+          if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+            return true;
+          }
+        }
+        break;
+      case endIdentifier:
+        for (; i < end; i++) {
+          int c = source.unitAt(i);
+          if (c >= 0x80 || !Lexer.isIdentifier(c)) {
+            return true;
+          }
+        }
+        break;
+      case endLine:
+        for (; i < end; i++) {
+          if (source.unitAt(i) == '\n') {
+            return true;
+          }
+        }
+        break;
+      case endComment:
+        for (; i + 1 < end; i++) {
+          if (source.unitAt(i) == '*' && source.unitAt(i + 1) == '/') {
+            return true;
+          }
+        }
+        break;
+      case endString:
+        for (; i < end; i++) {
+          int c = source.unitAt(i);
+          if (c == this.quote) {
+            return true;
+          }
+          if (c == '\\') {
+            if (i + 1 == end) {
+              break; // What the backslash escapes is still to come
+            }
+            i++;
+          }
+        }
+        break;
+      case endVerbatim:
+        for (; i < end; i++) {
+          if (source.unitAt(i) == this.quote) {
+            if (i + 1 == end) {
+              break; // Whether the quote is doubled is still to come
+            }
+            if (source.unitAt(i + 1) != this.quote) {
+              return true;
+            }
+            i++;
+          }
+        }
+        break;
+      default:
+        return this.mayEndTextBlock(source, end);
+    }
+    this.scan = i;
+    return false;
+  }
+
+  // mayEndTextBlock goes on with the scan of the lines of a text block up to end, and returns whether one of them may
+  // end it: a line which doesn't start with the indent of the first line is where the lexer expects the closing |||
+  // (or reports an error). Blank lines are a part of the block whatever their indent.
+  private boolean mayEndTextBlock(Source source, int end) {
+    int i = this.scan;
+    if (this.indentStart < 0) {
+      while (i < end && source.unitAt(i) == '\n') {
+        i++;
+      }
+      int indentEnd = i;
+      while (indentEnd < end && (source.unitAt(indentEnd) == ' ' || source.unitAt(indentEnd) == '\t')) {
+        indentEnd++;
+      }
+      if (indentEnd == end) {
+        this.scan = i;
+        return false;
+      }
+      if (indentEnd == i) {
+        return true; // The first line must start with whitespace, the lexer reports an error
+      }
+      this.indentStart = i;
+      this.indentLength = indentEnd - i;
+      this.lineStart = false;
+      i = indentEnd;
+    }
+    while (i < end) {
+      if (!this.lineStart) {
+        while (i < end && source.unitAt(i) != '\n') {
+          i++;
+        }
+        if (i == end) {
+          break;
+        }
+        i++;
+        this.lineStart = true;
+      } else if (source.unitAt(i) == '\n') {
+        i++;
+      } else if (i + this.indentLength > end) {
+        break; // Whether the line starts with the indent is still to come
+      } else {
+        for (int k = 0; k < this.indentLength; k++) {
+          if (source.unitAt(i + k) != source.unitAt(this.indentStart + k)) {
+            return true;
+          }
+        }
+        i += this.indentLength;
+        this.lineStart = false;
+      }
+    }
+    this.scan = i;
+    return false;
+  }
+
+  // decode decodes the bytes of in after the chars decoded so far. The last bytes of in are left in it if they are the
+  // start of a rune, unless it is the end of the input.
+  private void decode(ByteBuffer in, boolean endOfInput) {
+    // UTF-8 decodes to at most one char per byte
+    this.reserve(in.remaining());
+    CharBuffer out = CharBuffer.wrap(this.chars, this.end, this.chars.length - this.end);
+    this.decoder.decode(in, out, endOfInput);
+    if (endOfInput) {
+      this.decoder.flush(out);
+    }
+    this.decoded += out.position() - this.end;
+    this.end = out.position();
+  }
+
+  // reserve makes room for n more chars after the chars decoded so far.
+  private void reserve(int n) {
+    if (this.chars.length - this.end >= n) {
+      return;
+    }
+    int pending = this.end - this.start;
+    char[] chars = this.chars;
+    if (pending + n > chars.length) {
+      chars = new char[Math.max(2 * chars.length, pending + n)];
+    }
+    System.arraycopy(this.chars, this.start, chars, 0, pending);
+    this.chars = chars;
+    this.start = 0;
+    this.end = pending;
+  }
+
+  // -------------------------------------------------------------------------------------------------------------------
+  // ChunkReader hands the decoded chars over to the lexer. It never blocks: once out of chars before the end of the
+  // input, it throws NeedInput, for drainTokens to catch.
+  private final class ChunkReader extends Reader {
+    @Override
+    public int read(char[] buf, int off, int len) {
+      if (PushLexer.this.start == PushLexer.this.end) {
+        if (PushLexer.this.ended) {
+          return -1;
+        }
+        throw needInput;
+      }
+      int n = Math.min(len, PushLexer.this.end - PushLexer.this.start);
+      System.arraycopy(PushLexer.this.chars, PushLexer.this.start, buf, off, n);
+      PushLexer.this.start += n;
+      return n;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  // NeedInput is thrown through the lexer when it needs more input than was fed yet. It is a control flow signal, it
+  // has no stack trace and a single instance.
+  private static final class NeedInput extends RuntimeException {
+    NeedInput() {
+      super(null, null, false, false);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package com.jsonnet.lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+
+// ReaderSource is a source read from a Reader, its code units are UTF-16 chars. Only a window of the input is held in
+// memory: the chars from the offset the lexer set as keep (the end of the last token it handed out) up to the last char
+// read. When the lexer asks for a char past the window, the chars before keep are dropped to make room and more chars
+// are read. The window only grows when a single token and its fodder don't fit in it, so the memory used depends on
+// the size of the window and on the longest token, not on the size of the input.
+//
+// Offsets are counted from the start of the stream, and the length of the source is only known once the end of the
+// stream has been reached. Read errors are thrown as UncheckedIOException, from whichever call needed more input.
+final class ReaderSource extends Source {
+  private final Reader reader;
+  private char[] window; // The chars of the source from base on
+  private int base; // Offset of the first char of the window
+  private int end; // Offset after the last char read
+  private boolean eof; // Whether the reader has no more chars
+  int keep; // The chars before this offset may be dropped from the window
+  // Size of the chars read so far in UTF-8, and number of runes, counted as they are read
+  long bytes;
+  int runes;
+  private boolean highSurrogate; // Whether the last char read is a high surrogate
+
+  ReaderSource(Reader reader, int windowSize) {
+    this.reader = reader;
+    this.window = new char[windowSize];
+  }
+
+  // capacity returns the size of the window, in chars.
+  int capacity() {
+    return this.window.length;
+  }
+
+  // length returns the number of chars read so far. It is the length of the source once has() returned false.
+  @Override
+  int length() {
+    return this.end;
+  }
+
+  @Override
+  boolean has(int offset) {
+    return offset < this.end || this.fill(offset);
+  }
+
+  @Override
+  int unitAt(int offset) {
+    if (offset >= this.end && !this.fill(offset)) {
+      throw new IndexOutOfBoundsException(String.format("offset %d is past the end of the source", offset));
+    }
+    return this.window[offset - this.base];
+  }
+
+  @Override
+  int runeAt(int offset) {
+    char c = (char) this.unitAt(offset);
+    if (Character.isHighSurrogate(c) && this.has(offset + 1)) {
+      char low = this.window[offset + 1 - this.base];
+      if (Character.isLowSurrogate(low)) {
+        return Character.toCodePoint(c, low);
+      }
+    }
+    return c;
+  }
+
+  @Override
+  int runeLength(int offset) {
+    // Only a well formed surrogate pair makes up a rune of two chars, a lone surrogate is a rune on its own.
+    if (Character.isHighSurrogate((char) this.unitAt(offset)) && this.has(offset + 1)
+        && Character.isLowSurrogate(this.window[offset + 1 - this.base])) {
+      return 2;
+    }
+    return 1;
+  }
+
+  @Override
+  String slice(int start, int end) {
+    return new String(this.window, start - this.base, end - start);
+  }
+
+  @Override
+  void appendTo(StringBuilder sb, int start, int end) {
+    sb.append(this.window, start - this.base, end - start);
+  }
+
+  // fill reads chars until the one at offset is in the window, and returns whether there is one.
+  private boolean fill(int offset) {
+    try {
+      while (offset >= this.end) {
+        if (this.eof) {
+          return false;
+        }
+        int used = this.end - this.base;
+        if (used == this.window.length) {
+          // Drop the chars before keep if that makes room for a good part of the window, or else grow it: moving most
+          // of the window for a few more chars at a time would be quadratic in the length of a long token.
+          int drop = this.keep - this.base;
+          if (drop > 0 && drop >= this.window.length / 2) {
+            System.arraycopy(this.window, drop, this.window, 0, used - drop);
+            this.base = this.keep;
+            used -= drop;
+          } else {
+            this.window = Arrays.copyOf(this.window, this.window.length * 2);
+          }
+        }
+        int n = this.reader.read(this.window, used, this.window.length - used);
+        if (n < 0) {
+          this.eof = true;
+        } else {
+          this.count(used, used + n);
+          this.end += n;
+        }
+      }
+      return true;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // count adds the chars of the window between from and to to the size of the source in bytes and runes. A surrogate
+  // pair is one rune of four bytes, a lone surrogate a rune of three bytes, as it is for the other sources.
+  private void count(int from, int to) {
+    for (int i = from; i < to; i++) {
+      char c = this.window[i];
+      if (c < 0x80) {
+        this.bytes++;
+        this.runes++;
+      } else if (this.highSurrogate && Character.isLowSurrogate(c)) {
+        this.bytes++; // The high surrogate was counted as a rune of three bytes
+      } else {
+        this.bytes += c < 0x800 ? 2 : 3;
+        this.runes++;
+      }
+      this.highSurrogate = Character.isHighSurrogate(c);
+    }
+  }
+}
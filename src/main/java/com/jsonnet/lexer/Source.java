@@ -0,0 +1,45 @@
+package com.jsonnet.lexer;
+
+// Source is the text being lexed. Offsets into a source are counted in the code units of its encoding (chars for a
+// String, bytes for UTF-8 input), and the lexer always moves from the start of one rune to the start of the next.
+abstract class Source {
+  // length returns the length of the source in code units.
+  abstract int length();
+
+  // has returns whether the source has a code unit at offset. A source read from a stream may have to read more of it
+  // to tell, the lexer asks this rather than comparing to the length.
+  boolean has(int offset) {
+    return offset < this.length();
+  }
+
+  // unitAt returns the code unit at offset. Code units below 0x80 are ASCII characters whatever the encoding.
+  abstract int unitAt(int offset);
+
+  // runeAt returns the rune (code point in java terminology) that starts at offset.
+  abstract int runeAt(int offset);
+
+  // runeLength returns the number of code units of the rune that starts at offset.
+  abstract int runeLength(int offset);
+
+  // slice returns the text between the offsets start (inclusive) and end (exclusive) as a String.
+  abstract String slice(int start, int end);
+
+  // appendTo appends the runes between the offsets start (inclusive) and end (exclusive) to sb, as slice would give
+  // them but without making a String.
+  void appendTo(StringBuilder sb, int start, int end) {
+    sb.append(this.slice(start, end));
+  }
+
+  // startsWith returns whether the source contains the ASCII string prefix at offset.
+  boolean startsWith(String prefix, int offset) {
+    if (!prefix.isEmpty() && !this.has(offset + prefix.length() - 1)) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (this.unitAt(offset + i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -3,7 +3,7 @@ package com.jsonnet.lexer;
 // StaticErrorException represents an error during parsing/lexing some jsonnet.
 public class StaticErrorException extends RuntimeException{
   String msg;
-  LocationRange loc;
+  LocationRange loc; // Errors of the lexer only work out their line and column when they are reported
   public StaticErrorException(String msg, LocationRange loc) {
     this.msg = msg;
     this.loc = loc;
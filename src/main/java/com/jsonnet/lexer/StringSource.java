@@ -0,0 +1,50 @@
+package com.jsonnet.lexer;
+
+// StringSource is a source backed by a String, its code units are UTF-16 chars.
+class StringSource extends Source {
+  final String input;
+
+  StringSource(String input) {
+    this.input = input;
+  }
+
+  @Override
+  int length() {
+    return this.input.length();
+  }
+
+  @Override
+  int unitAt(int offset) {
+    return this.input.charAt(offset);
+  }
+
+  @Override
+  int runeAt(int offset) {
+    return this.input.codePointAt(offset);
+  }
+
+  @Override
+  int runeLength(int offset) {
+    // Only a well formed surrogate pair makes up a rune of two chars, a lone surrogate is a rune on its own.
+    if (Character.isHighSurrogate(this.input.charAt(offset)) && offset + 1 < this.input.length()
+        && Character.isLowSurrogate(this.input.charAt(offset + 1))) {
+      return 2;
+    }
+    return 1;
+  }
+
+  @Override
+  String slice(int start, int end) {
+    return this.input.substring(start, end);
+  }
+
+  @Override
+  void appendTo(StringBuilder sb, int start, int end) {
+    sb.append(this.input, start, end);
+  }
+
+  @Override
+  boolean startsWith(String prefix, int offset) {
+    return this.input.startsWith(prefix, offset);
+  }
+}
@@ -6,8 +6,21 @@ import java.util.List;
 
 public class Token {
   TokenKind kind; // The type of the token
-  List<FodderElement> fodder; // Any fodder the occurs before this token
-  String data; // Content of the token if it is not a keyword
+  List<FodderElement> fodder; // Any fodder the occurs before this token, built from fodderTable on first access
+  FodderTable fodderTable; // The table holding the fodder of this token, if it was lexed
+  int fodderStart; // Index in fodderTable of the first fodder element of this token
+  int fodderCount; // Number of fodder elements of this token
+  // Content of the token if it is not a keyword. It is sliced from the source on first access, unless the token was
+  // built with its data (e.g. text blocks, whose data is not a slice of the source).
+  String data;
+  // Value of a string literal, i.e. its data with the escape sequences decoded. The lexer only sets it for literals
+  // with escapes, the value of the others is their data.
+  String value;
+  Operator operator; // Operator of an operator token as the lexer resolved it, null if it was not or makes up none
+  double number; // Value of a number token as the lexer worked it out, NaN if it was not (no literal is NaN)
+  Source source; // The source the data is sliced from
+  int start; // Start offset of the token (of its data, for lazy tokens) in the source
+  int end; // End offset (exclusive) of the token in the source
   // Extra info for when kind == tokenStringBlock
   String stringBlockIndent;     // The sequence of whitespace that indented the block.
   String stringBlockTermIndent; // This is always fewer whitespace characters than in stringBlockIndent.
@@ -21,6 +34,84 @@ public class Token {
     this.stringBlockIndent = stringBlockIndent;
     this.stringBlockTermIndent = stringBlockTermIndent;
     this.loc = loc;
+    this.number = Double.NaN;
+  }
+
+  // Token builds a token whose data is the source between start and end, sliced lazily.
+  Token(TokenKind kind, List<FodderElement> fodder, Source source, int start, int end, LocationRange loc) {
+    this(kind, fodder, null, "", "", loc);
+    this.source = source;
+    this.start = start;
+    this.end = end;
+  }
+
+  public TokenKind getKind() {
+    return this.kind;
+  }
+
+  // getData returns the content of the token. Symbols and keywords share the constant text of their kind, other tokens
+  // slice their data from the source the first time it is asked for.
+  public String getData() {
+    if (this.data == null) {
+      this.data = this.kind.hasFixedData() ? this.kind.toString() : this.source.slice(this.start, this.end);
+    }
+    return this.data;
+  }
+
+  // getValue returns the value of a string literal token, i.e. its data with the escape sequences decoded. It is the
+  // data of any other token.
+  public String getValue() {
+    if (this.value == null) {
+      boolean escaped = this.kind == TokenKind.tokenStringDouble || this.kind == TokenKind.tokenStringSingle;
+      this.value = escaped ? Lexer.unescape(this.getData(), this.loc) : this.getData();
+    }
+    return this.value;
+  }
+
+  // getOperator returns the operator the token stands for, or null if it is not an operator token or if its symbols
+  // make up no operator. The lexer resolves it when it emits the token, the operator of a token built otherwise is
+  // looked up from its data on first access.
+  public Operator getOperator() {
+    if (this.operator == null) {
+      if (this.kind == TokenKind.tokenOperator) {
+        this.operator = Operator.of(this.getData());
+      } else if (this.kind == TokenKind.tokenIn) {
+        this.operator = Operator.opIn;
+      }
+    }
+    return this.operator;
+  }
+
+  // getNumber returns the value of a number token, the same as Double.parseDouble(getData()) gives. The lexer works it
+  // out while it scans the literal, the value of a token built otherwise is parsed from its data on first access.
+  public double getNumber() {
+    if (this.kind != TokenKind.tokenNumber) {
+      throw new IllegalStateException(String.format("%s is not a number token", this));
+    }
+    if (Double.isNaN(this.number)) {
+      this.number = this.source != null ? NumberParser.parse(this.source, this.start, this.end)
+          : NumberParser.parse(new StringSource(this.data), 0, this.data.length());
+    }
+    return this.number;
+  }
+
+  // getFodder returns the fodder that occurs before this token. The elements are built on first access.
+  public List<FodderElement> getFodder() {
+    if (this.fodder == null && this.fodderTable != null) {
+      this.fodder = this.fodderTable.elements(this.fodderStart, this.fodderCount);
+    }
+    return this.fodder;
+  }
+
+  // detach resolves the data, fodder and location of the token, and drops its references to the source it was lexed
+  // from, so that the token stays valid once the source is gone or has moved on.
+  Token detach() {
+    this.getData();
+    this.getFodder();
+    this.loc.resolve();
+    this.source = null;
+    this.fodderTable = null;
+    return this;
   }
 
   public static Token of(TokenKind kind, String data) {
@@ -29,6 +120,6 @@ public class Token {
 
   @Override
   public String toString() {
-    return String.format("{kind: %s, data: %s}", kind, data);
+    return String.format("{kind: %s, data: %s}", kind, this.getData());
   }
 }
@@ -0,0 +1,324 @@
+package com.jsonnet.lexer;
+
+import com.jsonnet.lexer.fodder.FodderElement;
+import com.jsonnet.lexer.fodder.FodderKind;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+// TokenBuffer is a compact, structure-of-arrays representation of the tokens of a file. Each token is a row across
+// parallel int arrays (kind, offsets of its data in the source, begin and end line/column and the index of its first
+// fodder element, fodder elements being ranges of the source as well) instead of a graph of Token, LocationRange,
+// Location, List and String objects. Tokens are read through a Cursor flyweight, and full Token objects are only built
+// on request.
+public class TokenBuffer {
+  private static final TokenKind[] kinds = TokenKind.values();
+  private static final FodderKind[] fodderKinds = FodderKind.values();
+  private static final Operator[] operators = Operator.values();
+
+  final String fileName; // The file name the tokens come from, only used for locations
+  final Source source; // The source the token data is sliced from
+
+  private int size; // Number of tokens in the buffer
+  // TokenKind ordinal of each token in the low byte, and above it the Operator ordinal + 1 of an operator token (or
+  // tokenIn) as the lexer resolved it, or 0.
+  private int[] kind = new int[16];
+  private int[] start = new int[16]; // Start offset of the data of each token in the source
+  private int[] end = new int[16]; // End offset (exclusive) of the data of each token in the source
+  private int[] beginLine = new int[16];
+  private int[] beginColumn = new int[16];
+  private int[] endLine = new int[16];
+  private int[] endColumn = new int[16];
+  // Index of the first fodder element of each token, the fodder of token i ends where the fodder of token i + 1 starts
+  private int[] fodderStart = new int[17];
+
+  private int fodderSize; // Number of fodder elements in the buffer
+  private byte[] fodderKind = new byte[16]; // FodderKind ordinal of each fodder element
+  private int[] fodderDataStart = new int[16]; // Start offset of the data of each fodder element in the source
+  private int[] fodderDataEnd = new int[16]; // End offset (exclusive) of the data of each fodder element in the source
+
+  // Text blocks and verbatim strings with doubled quotes are the only tokens whose data is not a slice of the source.
+  // They are rare, so their data and indents are kept aside, keyed by token index (in increasing order).
+  private int blockSize;
+  private int[] blockToken = new int[4];
+  private final List<String[]> blocks = new ArrayList<>();
+
+  // The values of the number tokens as the lexer worked them out, keyed by token index (in increasing order) as well:
+  // number tokens are a small part of the tokens, a column of every token would mostly be empty.
+  private int numberSize;
+  private int[] numberToken = new int[4];
+  private double[] numberValue = new double[4];
+
+  TokenBuffer(String fileName, Source source) {
+    this.fileName = fileName;
+    this.source = source;
+  }
+
+  // TokenBuffer makes an empty buffer with room for capacity tokens and fodderCapacity fodder elements.
+  TokenBuffer(String fileName, Source source, int capacity, int fodderCapacity) {
+    this(fileName, source);
+    capacity = Math.max(capacity, 1);
+    fodderCapacity = Math.max(fodderCapacity, 1);
+    this.kind = new int[capacity];
+    this.start = new int[capacity];
+    this.end = new int[capacity];
+    this.beginLine = new int[capacity];
+    this.beginColumn = new int[capacity];
+    this.endLine = new int[capacity];
+    this.endColumn = new int[capacity];
+    this.fodderStart = new int[capacity + 1];
+    this.fodderKind = new byte[fodderCapacity];
+    this.fodderDataStart = new int[fodderCapacity];
+    this.fodderDataEnd = new int[fodderCapacity];
+  }
+
+  void add(TokenKind kind, int start, int end, String data, String stringBlockIndent, String stringBlockTermIndent,
+      int beginLine, int beginColumn, int endLine, int endColumn, FodderTable fodder, int fodderFrom) {
+    for (int f = fodderFrom; f < fodder.size(); f++) {
+      this.addFodder(fodder.kind(f), fodder.start(f), fodder.end(f));
+    }
+    this.add(kind, start, end, data, stringBlockIndent, stringBlockTermIndent, beginLine, beginColumn, endLine,
+        endColumn);
+  }
+
+  // add adds a token, whose fodder is made of the fodder elements added since the previous token. data and the indents
+  // are only set for tokens whose data is not a slice of the source.
+  void add(TokenKind kind, int start, int end, String data, String stringBlockIndent, String stringBlockTermIndent,
+      int beginLine, int beginColumn, int endLine, int endColumn) {
+    if (this.size == this.kind.length) {
+      int capacity = this.size * 2;
+      this.kind = Arrays.copyOf(this.kind, capacity);
+      this.start = Arrays.copyOf(this.start, capacity);
+      this.end = Arrays.copyOf(this.end, capacity);
+      this.beginLine = Arrays.copyOf(this.beginLine, capacity);
+      this.beginColumn = Arrays.copyOf(this.beginColumn, capacity);
+      this.endLine = Arrays.copyOf(this.endLine, capacity);
+      this.endColumn = Arrays.copyOf(this.endColumn, capacity);
+      this.fodderStart = Arrays.copyOf(this.fodderStart, capacity + 1);
+    }
+    int i = this.size;
+    this.kind[i] = kind.ordinal();
+    this.start[i] = start;
+    this.end[i] = end;
+    this.beginLine[i] = beginLine;
+    this.beginColumn[i] = beginColumn;
+    this.endLine[i] = endLine;
+    this.endColumn[i] = endColumn;
+    this.fodderStart[i + 1] = this.fodderSize;
+
+    if (data != null) {
+      if (this.blockSize == this.blockToken.length) {
+        this.blockToken = Arrays.copyOf(this.blockToken, this.blockSize * 2);
+      }
+      this.blockToken[this.blockSize++] = i;
+      this.blocks.add(new String[]{data, stringBlockIndent, stringBlockTermIndent});
+    }
+    this.size++;
+  }
+
+  // setNumber sets the value of the last token added, a number token.
+  void setNumber(double value) {
+    if (this.numberSize == this.numberToken.length) {
+      this.numberToken = Arrays.copyOf(this.numberToken, this.numberSize * 2);
+      this.numberValue = Arrays.copyOf(this.numberValue, this.numberSize * 2);
+    }
+    this.numberToken[this.numberSize] = this.size - 1;
+    this.numberValue[this.numberSize++] = value;
+  }
+
+  // setOperator sets the operator of the last token added, an operator token or tokenIn.
+  void setOperator(Operator op) {
+    if (op != null) {
+      this.kind[this.size - 1] |= (op.ordinal() + 1) << 8;
+    }
+  }
+
+  void addFodder(FodderKind kind, int start, int end) {
+    if (this.fodderSize == this.fodderKind.length) {
+      this.fodderKind = Arrays.copyOf(this.fodderKind, this.fodderSize * 2);
+      this.fodderDataStart = Arrays.copyOf(this.fodderDataStart, this.fodderSize * 2);
+      this.fodderDataEnd = Arrays.copyOf(this.fodderDataEnd, this.fodderSize * 2);
+    }
+    this.fodderKind[this.fodderSize] = (byte) kind.ordinal();
+    this.fodderDataStart[this.fodderSize] = start;
+    this.fodderDataEnd[this.fodderSize] = end;
+    this.fodderSize++;
+  }
+
+  // size returns the number of tokens in the buffer, including the EOF token.
+  public int size() {
+    return this.size;
+  }
+
+  // cursor returns a new cursor positioned on the first token.
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  // token builds a full Token object for the token at index i.
+  public Token token(int i) {
+    return this.cursor().moveTo(i).toToken();
+  }
+
+  // toList builds a full Token object for every token of the buffer.
+  public List<Token> toList() {
+    List<Token> tokens = new ArrayList<>(this.size);
+    for (Cursor c = this.cursor(); c.isValid(); c.next()) {
+      tokens.add(c.toToken());
+    }
+    return tokens;
+  }
+
+  private String[] block(int i) {
+    int b = Arrays.binarySearch(this.blockToken, 0, this.blockSize, i);
+    return b < 0 ? null : this.blocks.get(b);
+  }
+
+  // number returns the value of the number token at index i as the lexer worked it out, or NaN if it didn't.
+  private double number(int i) {
+    int n = Arrays.binarySearch(this.numberToken, 0, this.numberSize, i);
+    return n < 0 ? Double.NaN : this.numberValue[n];
+  }
+
+  // -------------------------------------------------------------------------------------------------------------------
+  // Cursor is a flyweight view of one token of the buffer at a time. Moving it around does not allocate.
+  public class Cursor {
+    private int index;
+
+    // index returns the index of the token the cursor is on.
+    public int index() {
+      return this.index;
+    }
+
+    // isValid returns whether the cursor is on a token, it is not once it moved past the last token.
+    public boolean isValid() {
+      return this.index >= 0 && this.index < TokenBuffer.this.size;
+    }
+
+    public Cursor moveTo(int index) {
+      this.index = index;
+      return this;
+    }
+
+    public Cursor next() {
+      this.index++;
+      return this;
+    }
+
+    public TokenKind kind() {
+      return kinds[TokenBuffer.this.kind[this.index] & 0xFF];
+    }
+
+    // data returns the content of the token, it is sliced from the source on every call (but for text blocks and
+    // verbatim strings with doubled quotes).
+    public String data() {
+      String[] block = TokenBuffer.this.block(this.index);
+      if (block != null) {
+        return block[0];
+      }
+      return TokenBuffer.this.source.slice(this.start(), this.end());
+    }
+
+    // start returns the offset of the token data in the source, in code units of the source.
+    public int start() {
+      return TokenBuffer.this.start[this.index];
+    }
+
+    // end returns the offset (exclusive) of the end of the token data in the source, in code units of the source.
+    public int end() {
+      return TokenBuffer.this.end[this.index];
+    }
+
+    public int beginLine() {
+      return TokenBuffer.this.beginLine[this.index];
+    }
+
+    public int beginColumn() {
+      return TokenBuffer.this.beginColumn[this.index];
+    }
+
+    public int endLine() {
+      return TokenBuffer.this.endLine[this.index];
+    }
+
+    public int endColumn() {
+      return TokenBuffer.this.endColumn[this.index];
+    }
+
+    // fodderCount returns the number of fodder elements before the token.
+    public int fodderCount() {
+      return TokenBuffer.this.fodderStart[this.index + 1] - TokenBuffer.this.fodderStart[this.index];
+    }
+
+    public FodderKind fodderKind(int i) {
+      return fodderKinds[TokenBuffer.this.fodderKind[TokenBuffer.this.fodderStart[this.index] + i]];
+    }
+
+    // fodderData returns the data of the i-th fodder element of the token, it is sliced from the source on every call.
+    public String fodderData(int i) {
+      int f = TokenBuffer.this.fodderStart[this.index] + i;
+      return TokenBuffer.this.source.slice(TokenBuffer.this.fodderDataStart[f], TokenBuffer.this.fodderDataEnd[f]);
+    }
+
+    int fodderStart(int i) {
+      return TokenBuffer.this.fodderDataStart[TokenBuffer.this.fodderStart[this.index] + i];
+    }
+
+    int fodderEnd(int i) {
+      return TokenBuffer.this.fodderDataEnd[TokenBuffer.this.fodderStart[this.index] + i];
+    }
+
+    // operator returns the operator the token stands for, see Token.getOperator. The operator of a token read back from
+    // a stream (see TokenStreamReader) is looked up from the source on every call.
+    public Operator operator() {
+      int op = TokenBuffer.this.kind[this.index] >>> 8;
+      if (op > 0) {
+        return operators[op - 1];
+      }
+      if (this.kind() == TokenKind.tokenOperator) {
+        return Operator.of(TokenBuffer.this.source, this.start(), this.end());
+      }
+      return this.kind() == TokenKind.tokenIn ? Operator.opIn : null;
+    }
+
+    // number returns the value of the number token the cursor is on, see Token.getNumber. The value of a token read
+    // back from a stream (see TokenStreamReader) is parsed from the source on every call.
+    public double number() {
+      if (this.kind() != TokenKind.tokenNumber) {
+        throw new IllegalStateException(String.format("%s is not a number token", this.kind()));
+      }
+      double value = TokenBuffer.this.number(this.index);
+      return Double.isNaN(value) ? NumberParser.parse(TokenBuffer.this.source, this.start(), this.end()) : value;
+    }
+
+    // block returns the data and indents of the token the cursor is on, or null if its data is a slice of the source.
+    String[] block() {
+      return TokenBuffer.this.block(this.index);
+    }
+
+    // toToken builds a full Token object for the token the cursor is on.
+    public Token toToken() {
+      List<FodderElement> fodder = new ArrayList<>(this.fodderCount());
+      for (int i = 0; i < this.fodderCount(); i++) {
+        fodder.add(new FodderElement(this.fodderKind(i), this.fodderData(i)));
+      }
+      String[] block = TokenBuffer.this.block(this.index);
+      Location begin = new Location(this.beginLine(), this.beginColumn());
+      Location end = new Location(this.endLine(), this.endColumn());
+      LocationRange loc = new LocationRange(TokenBuffer.this.fileName, begin, end);
+      if (block != null) {
+        Token t = new Token(this.kind(), fodder, block[0], block[1], block[2], loc);
+        t.start = this.start();
+        t.end = this.end();
+        return t;
+      }
+      Token t = new Token(this.kind(), fodder, TokenBuffer.this.source, this.start(), this.end(), loc);
+      if (t.kind == TokenKind.tokenNumber) {
+        t.number = TokenBuffer.this.number(this.index);
+      }
+      t.operator = this.operator();
+      return t;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.jsonnet.lexer;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.CharBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// ---------------------------------------------------------------------------------------------------------------------
+// TokenCache keeps the tokens of lexed sources in files under a directory, so that a source which was lexed before (by
+// this process or another one) is not lexed again. Entries are keyed by a SHA-256 hash of the content of the source,
+// together with the cache version and the lexer options, and hold the tokens as a token stream (see TokenStreamWriter).
+// Tokens loaded from an entry refer to ranges of the source they are loaded for, but for text blocks.
+//
+// Entries are written to a temporary file which is then moved in place atomically, so that processes sharing the
+// directory only ever see complete entries. Entries that can't be read (e.g. written by another version of the cache)
+// are ignored and written again.
+public class TokenCache {
+  // version must be bumped whenever the lexer or the format of the entries changes, so that stale entries are not used.
+  static final int version = 2;
+  private static final int magic = 0x4a544f4b; // "JTOK"
+
+  final Path directory;
+  final AtomicInteger hits = new AtomicInteger(); // Number of sources whose tokens were loaded from the cache
+  final AtomicInteger misses = new AtomicInteger(); // Number of sources which were lexed
+
+  public TokenCache(Path directory) throws IOException {
+    this.directory = Files.createDirectories(directory);
+  }
+
+  public TokenBuffer lex(String fileName, String input) throws IOException {
+    return this.lex(fileName, input, LexerOptions.DEFAULT);
+  }
+
+  public TokenBuffer lex(String fileName, String input, LexerOptions options) throws IOException {
+    MessageDigest digest = digest(options, 'S');
+    // Hash the chars of the input through a small buffer rather than encoding it as a whole
+    ByteBuffer bytes = ByteBuffer.allocate(1 << 14);
+    CharBuffer chars = bytes.asCharBuffer();
+    for (int start = 0; start < input.length(); start += chars.capacity()) {
+      int end = Math.min(input.length(), start + chars.capacity());
+      ((Buffer) chars).clear(); // Through Buffer, CharBuffer.clear() is only there from Java 9 on
+      chars.put(input, start, end);
+      digest.update(bytes.array(), 0, 2 * (end - start));
+    }
+    return this.lex(fileName, new StringSource(input), options, digest.digest());
+  }
+
+  // lex returns the tokens of the UTF-8 encoded file at path, which is mapped in memory.
+  public TokenBuffer lex(Path path) throws IOException {
+    return this.lex(path, LexerOptions.DEFAULT);
+  }
+
+  public TokenBuffer lex(Path path, LexerOptions options) throws IOException {
+    ByteBuffer bytes = Lexer.map(path);
+    MessageDigest digest = digest(options, 'U');
+    digest.update(bytes.duplicate());
+    return this.lex(path.toString(), new Utf8Source(bytes), options, digest.digest());
+  }
+
+  private TokenBuffer lex(String fileName, Source source, LexerOptions options, byte[] key) throws IOException {
+    Path entry = this.entry(key);
+    TokenBuffer buffer = read(entry, key, fileName, source);
+    if (buffer != null) {
+      this.hits.incrementAndGet();
+      return buffer;
+    }
+    this.misses.incrementAndGet();
+    buffer = new Lexer(fileName, source, options).lexToBuffer();
+    this.write(entry, key, buffer);
+    return buffer;
+  }
+
+  // digest returns a digest for the key of a source, which hashes everything the tokens of the source depend on: the
+  // cache version, the options, the encoding of the source (offsets are in its code units) and, once the caller updated
+  // it, its content.
+  private static MessageDigest digest(LexerOptions options, char encoding) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+    digest.update(ByteBuffer.allocate(6).putInt(version).put((byte) (options.captureFodder ? 1 : 0))
+        .put((byte) encoding).array());
+    return digest;
+  }
+
+  // entry returns the path of the entry of key. Entries are spread over 256 subdirectories.
+  private Path entry(byte[] key) {
+    StringBuilder hex = new StringBuilder(key.length * 2);
+    for (byte b : key) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return this.directory.resolve(hex.substring(0, 2)).resolve(hex.substring(2) + ".tokens");
+  }
+
+  // read reads the entry at path, or returns null if there is no such entry or it can't be used.
+  private static TokenBuffer read(Path path, byte[] key, String fileName, Source source) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (in.getInt() != magic || in.getInt() != version) {
+        return null;
+      }
+      byte[] entryKey = new byte[key.length];
+      in.get(entryKey);
+      if (!Arrays.equals(entryKey, key) || in.getInt() != source.length()) {
+        return null;
+      }
+      return TokenStreamReader.open(in).toBuffer(fileName, source);
+    } catch (IOException | RuntimeException e) {
+      // No entry, or a truncated or otherwise broken one which is written again
+      return null;
+    }
+  }
+
+  private void write(Path path, byte[] key, TokenBuffer buffer) throws IOException {
+    byte[] stream = TokenStreamWriter.toByteArray(buffer);
+    ByteBuffer out = ByteBuffer.allocate(4 + 4 + key.length + 4 + stream.length);
+    out.putInt(magic);
+    out.putInt(version);
+    out.put(key);
+    out.putInt(buffer.source.length());
+    out.put(stream);
+    ((Buffer) out).flip(); // Through Buffer, ByteBuffer.flip() is only there from Java 9 on
+
+    Files.createDirectories(path.getParent());
+    Path temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        while (out.hasRemaining()) {
+          channel.write(out);
+        }
+      }
+      try {
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+}
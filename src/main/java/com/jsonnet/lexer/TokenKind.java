@@ -5,17 +5,17 @@ public enum TokenKind {
   tokenInvalid("invalid"),
 
   // Symbols
-  tokenBraceL("{"),
-  tokenBraceR("}"),
-  tokenBracketL("["),
-  tokenBracketR("]"),
-  tokenColon(":"),
-  tokenComma(","),
-  tokenDollar("$"),
-  tokenDot("."),
-  tokenParenL("("),
-  tokenParenR(")"),
-  tokenSemicolon(";"),
+  tokenBraceL("{", true),
+  tokenBraceR("}", true),
+  tokenBracketL("[", true),
+  tokenBracketR("]", true),
+  tokenColon(":", true),
+  tokenComma(",", true),
+  tokenDollar("$", true),
+  tokenDot(".", true),
+  tokenParenL("(", true),
+  tokenParenR(")", true),
+  tokenSemicolon(";", true),
 
   // Arbitrary length lexemes
   tokenIdentifier("IDENTIFIER"),
@@ -28,32 +28,44 @@ public enum TokenKind {
   tokenVerbatimStringSingle("VERBATIM_STRING_SINGLE"),
 
   // Keywords
-  tokenAssert("assert"),
-  tokenElse("else"),
-  tokenError("error"),
-  tokenFalse("false"),
-  tokenFor("for"),
-  tokenFunction("function"),
-  tokenIf("if"),
-  tokenImport("import"),
-  tokenImportStr("importstr"),
-  tokenImportBin("importbin"),
-  tokenIn("in"),
-  tokenLocal("local"),
-  tokenNullLit("null"),
-  tokenSelf("self"),
-  tokenSuper("super"),
-  tokenTailStrict("tailstrict"),
-  tokenThen("then"),
-  tokenTrue("true"),
+  tokenAssert("assert", true),
+  tokenElse("else", true),
+  tokenError("error", true),
+  tokenFalse("false", true),
+  tokenFor("for", true),
+  tokenFunction("function", true),
+  tokenIf("if", true),
+  tokenImport("import", true),
+  tokenImportStr("importstr", true),
+  tokenImportBin("importbin", true),
+  tokenIn("in", true),
+  tokenLocal("local", true),
+  tokenNullLit("null", true),
+  tokenSelf("self", true),
+  tokenSuper("super", true),
+  tokenTailStrict("tailstrict", true),
+  tokenThen("then", true),
+  tokenTrue("true", true),
 
   // A special token represents the EOF.
   tokenEndOfFile("end of file");
 
   private final String text;
+  private final boolean fixed; // Whether every token of this kind has text as its data
 
   TokenKind(String text) {
+    this(text, false);
+  }
+
+  TokenKind(String text, boolean fixed) {
     this.text = text;
+    this.fixed = fixed;
+  }
+
+  // hasFixedData returns whether the data of every token of this kind is the same, namely the text of the kind. This
+  // is the case for symbols and keywords.
+  public boolean hasFixedData() {
+    return this.fixed;
   }
 
   @Override
@@ -0,0 +1,353 @@
+package com.jsonnet.lexer;
+
+import com.jsonnet.lexer.fodder.FodderElement;
+import com.jsonnet.lexer.fodder.FodderKind;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+// ---------------------------------------------------------------------------------------------------------------------
+// TokenStreamReader reads tokens written by a TokenStreamWriter, see there for the format. The reader works on the
+// buffer of the stream directly, e.g. a file mapped in memory: opening a stream only decodes its header and finds
+// where the strings of its string table are, and tokens are decoded as a Cursor moves over them. Strings are decoded
+// the first time they are asked for, and shared by all the tokens which use them.
+//
+// A reader can be used by several threads at once, each with its own cursor.
+public class TokenStreamReader {
+  private static final TokenKind[] kinds = TokenKind.values();
+  private static final FodderKind[] fodderKinds = FodderKind.values();
+
+  private final ByteBuffer bytes;
+  private final int[] stringStart; // Position of the encoded chars of each string of the string table
+  private final int[] stringEnd;
+  private final String[] strings; // The strings decoded so far
+  private final boolean ranges; // Whether the offsets of the fodder elements are known
+  private final String fileName;
+  private final int size; // Number of tokens of the stream
+  private final int fodderSize; // Number of fodder elements of the stream
+  private final int tokensPosition; // Position of the token section
+  private final int fodderPosition; // Position of the fodder section
+
+  private TokenStreamReader(ByteBuffer bytes) throws IOException {
+    this.bytes = bytes;
+    Decoder in = new Decoder(bytes, bytes.position());
+    if (bytes.remaining() < 4 || bytes.getInt(bytes.position()) != TokenStreamWriter.magic) {
+      throw new IOException("Not a token stream");
+    }
+    in.position += 4;
+    int version = in.varint();
+    if (version != TokenStreamWriter.version) {
+      throw new IOException(String.format("Unsupported token stream version %d, expected %d", version,
+          TokenStreamWriter.version));
+    }
+    this.ranges = (in.varint() & TokenStreamWriter.flagRanges) != 0;
+    int count = in.count();
+    this.stringStart = new int[count];
+    this.stringEnd = new int[count];
+    this.strings = new String[count];
+    for (int i = 0; i < count; i++) {
+      int length = in.count();
+      this.stringStart[i] = in.position;
+      this.stringEnd[i] = in.position + length;
+      in.position += length;
+    }
+    this.fileName = this.string(in.varint());
+    this.size = in.count();
+    this.fodderSize = in.count();
+    int tokensLength = in.count();
+    this.tokensPosition = in.position;
+    this.fodderPosition = in.position + tokensLength;
+    if (this.fodderPosition > bytes.limit()) {
+      throw new IOException("Truncated token stream");
+    }
+  }
+
+  // open opens the stream between the position and the limit of bytes. The buffer must not be modified while the
+  // stream is read.
+  public static TokenStreamReader open(ByteBuffer bytes) throws IOException {
+    return new TokenStreamReader(bytes.duplicate());
+  }
+
+  // open maps the stream in the file at path in memory.
+  public static TokenStreamReader open(Path path) throws IOException {
+    return open(Lexer.map(path));
+  }
+
+  public String fileName() {
+    return this.fileName;
+  }
+
+  // size returns the number of tokens of the stream, including the EOF token.
+  public int size() {
+    return this.size;
+  }
+
+  // cursor returns a new cursor, positioned before the first token.
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  // toList builds a full Token object for every token of the stream.
+  public List<Token> toList() {
+    List<Token> tokens = new ArrayList<>(this.size);
+    for (Cursor c = this.cursor(); c.next(); ) {
+      tokens.add(c.toToken());
+    }
+    return tokens;
+  }
+
+  // toBuffer builds a TokenBuffer of the tokens over source, which must have the content the tokens were lexed from.
+  TokenBuffer toBuffer(String fileName, Source source) {
+    if (!this.ranges) {
+      throw new IllegalStateException("The offsets of the fodder of the stream are not known");
+    }
+    TokenBuffer buffer = new TokenBuffer(fileName, source, this.size, this.fodderSize);
+    for (Cursor c = this.cursor(); c.next(); ) {
+      for (int i = 0; i < c.fodderCount; i++) {
+        buffer.addFodder(fodderKinds[c.fodderKind[i]], c.fodderStart[i], c.fodderEnd[i]);
+      }
+      if (c.kind == TokenKind.tokenStringBlock) {
+        buffer.add(c.kind, c.start, c.end, this.string(c.data), this.string(c.indent), this.string(c.termIndent),
+            c.beginLine, c.beginColumn, c.endLine, c.endColumn);
+      } else if (c.kind == TokenKind.tokenVerbatimStringDouble || c.kind == TokenKind.tokenVerbatimStringSingle) {
+        // The doubled quotes of a verbatim string are resolved in its data, which is then not a slice of the source
+        buffer.add(c.kind, c.start, c.end, this.string(c.data), "", "", c.beginLine, c.beginColumn, c.endLine,
+            c.endColumn);
+      } else {
+        buffer.add(c.kind, c.start, c.end, null, null, null, c.beginLine, c.beginColumn, c.endLine, c.endColumn);
+      }
+    }
+    return buffer;
+  }
+
+  // string returns the string at index i of the string table.
+  private String string(int i) {
+    String s = this.strings[i];
+    if (s == null) {
+      s = decode(this.bytes, this.stringStart[i], this.stringEnd[i]);
+      // Threads racing here decode equal strings, any of them can be kept
+      this.strings[i] = s;
+    }
+    return s;
+  }
+
+  // decode decodes the chars of a string of the string table, between the positions start and end of bytes. Each char,
+  // a surrogate included, is encoded on its own in 1 to 3 bytes as UTF-8 would encode it (see TokenStreamWriter).
+  private static String decode(ByteBuffer bytes, int start, int end) {
+    char[] chars = new char[end - start];
+    int length = 0;
+    for (int p = start; p < end; ) {
+      int b = bytes.get(p++) & 0xFF;
+      if (b < 0x80) {
+        chars[length++] = (char) b;
+      } else if (b < 0xE0) {
+        chars[length++] = (char) ((b & 0x1F) << 6 | bytes.get(p++) & 0x3F);
+      } else {
+        chars[length++] = (char) ((b & 0x0F) << 12 | (bytes.get(p++) & 0x3F) << 6 | bytes.get(p++) & 0x3F);
+      }
+    }
+    return new String(chars, 0, length);
+  }
+
+  // -------------------------------------------------------------------------------------------------------------------
+  // Decoder reads varints from a position of a buffer, without moving the position of the buffer itself.
+  private static final class Decoder {
+    final ByteBuffer bytes;
+    int position;
+
+    Decoder(ByteBuffer bytes, int position) {
+      this.bytes = bytes;
+      this.position = position;
+    }
+
+    int readByte() {
+      return this.bytes.get(this.position++) & 0xFF;
+    }
+
+    int varint() throws IOException {
+      // Most numbers of a stream are deltas which fit in a byte
+      int v = this.bytes.get(this.position);
+      if (v >= 0) {
+        this.position++;
+        return v;
+      }
+      v = 0;
+      for (int shift = 0; shift < 35; shift += 7) {
+        int b = this.readByte();
+        v |= (b & 0x7F) << shift;
+        if (b < 0x80) {
+          return v;
+        }
+      }
+      throw new IOException("Invalid varint at " + this.position);
+    }
+
+    int signed() throws IOException {
+      int v = this.varint();
+      return (v >>> 1) ^ -(v & 1);
+    }
+
+    // count reads a number of items, each of which takes at least a byte, so that a broken stream fails early.
+    int count() throws IOException {
+      int count = this.varint();
+      if (count < 0 || count > this.bytes.limit() - this.position) {
+        throw new IOException(String.format("Invalid count %d at %d", count, this.position));
+      }
+      return count;
+    }
+  }
+
+  // -------------------------------------------------------------------------------------------------------------------
+  // Cursor decodes the tokens of the stream one after the other. Moving it does not allocate, but for tokens with more
+  // fodder elements than any token before them.
+  public class Cursor {
+    private final Decoder tokens = new Decoder(TokenStreamReader.this.bytes, TokenStreamReader.this.tokensPosition);
+    private final Decoder fodder = new Decoder(TokenStreamReader.this.bytes, TokenStreamReader.this.fodderPosition);
+    private int index = -1;
+    private int prevEndLine;
+    private int prevFodderEnd;
+
+    TokenKind kind;
+    int start;
+    int end;
+    int data = -1; // Index of the data of the token in the string table, -1 if its kind has fixed data
+    int indent;
+    int termIndent;
+    int beginLine;
+    int beginColumn;
+    int endLine;
+    int endColumn;
+    int fodderCount;
+    byte[] fodderKind = new byte[4];
+    int[] fodderData = new int[4]; // Index of the data of each fodder element in the string table
+    int[] fodderStart = new int[4];
+    int[] fodderEnd = new int[4];
+
+    // index returns the index of the token the cursor is on.
+    public int index() {
+      return this.index;
+    }
+
+    // next moves the cursor to the next token, and returns whether there is one.
+    public boolean next() {
+      if (this.index + 1 >= TokenStreamReader.this.size) {
+        this.index = TokenStreamReader.this.size;
+        return false;
+      }
+      this.index++;
+      try {
+        this.decode();
+      } catch (IOException e) {
+        throw new IllegalStateException("Broken token stream", e);
+      }
+      return true;
+    }
+
+    private void decode() throws IOException {
+      Decoder in = this.tokens;
+      this.kind = kinds[in.readByte()];
+      this.start = this.end + in.signed();
+      this.end = this.start + in.varint();
+      this.data = this.kind.hasFixedData() ? -1 : in.varint();
+      if (this.kind == TokenKind.tokenStringBlock) {
+        this.indent = in.varint();
+        this.termIndent = in.varint();
+      }
+      this.beginLine = this.prevEndLine + in.signed();
+      this.beginColumn = in.varint();
+      this.endLine = this.beginLine + in.varint();
+      this.endColumn = in.varint();
+      this.prevEndLine = this.endLine;
+
+      int count = in.varint();
+      if (count > this.fodderKind.length) {
+        int capacity = Math.max(count, this.fodderKind.length * 2);
+        this.fodderKind = Arrays.copyOf(this.fodderKind, capacity);
+        this.fodderData = Arrays.copyOf(this.fodderData, capacity);
+        this.fodderStart = Arrays.copyOf(this.fodderStart, capacity);
+        this.fodderEnd = Arrays.copyOf(this.fodderEnd, capacity);
+      }
+      for (int i = 0; i < count; i++) {
+        this.fodderKind[i] = (byte) this.fodder.readByte();
+        this.fodderData[i] = this.fodder.varint();
+        this.fodderStart[i] = this.prevFodderEnd + this.fodder.signed();
+        this.fodderEnd[i] = this.fodderStart[i] + this.fodder.varint();
+        this.prevFodderEnd = this.fodderEnd[i];
+      }
+      this.fodderCount = count;
+    }
+
+    public TokenKind kind() {
+      return this.kind;
+    }
+
+    // data returns the content of the token.
+    public String data() {
+      return this.data < 0 ? this.kind.toString() : TokenStreamReader.this.string(this.data);
+    }
+
+    // start returns the offset of the token data in the source it was lexed from.
+    public int start() {
+      return this.start;
+    }
+
+    // end returns the offset (exclusive) of the end of the token data in the source it was lexed from.
+    public int end() {
+      return this.end;
+    }
+
+    public int beginLine() {
+      return this.beginLine;
+    }
+
+    public int beginColumn() {
+      return this.beginColumn;
+    }
+
+    public int endLine() {
+      return this.endLine;
+    }
+
+    public int endColumn() {
+      return this.endColumn;
+    }
+
+    // fodderCount returns the number of fodder elements before the token.
+    public int fodderCount() {
+      return this.fodderCount;
+    }
+
+    public FodderKind fodderKind(int i) {
+      return fodderKinds[this.fodderKind[i]];
+    }
+
+    public String fodderData(int i) {
+      return TokenStreamReader.this.string(this.fodderData[i]);
+    }
+
+    // toToken builds a full Token object for the token the cursor is on.
+    public Token toToken() {
+      List<FodderElement> fodder = new ArrayList<>(this.fodderCount);
+      for (int i = 0; i < this.fodderCount; i++) {
+        fodder.add(new FodderElement(this.fodderKind(i), this.fodderData(i)));
+      }
+      Location begin = new Location(this.beginLine, this.beginColumn);
+      Location end = new Location(this.endLine, this.endColumn);
+      LocationRange loc = new LocationRange(TokenStreamReader.this.fileName, begin, end);
+      Token t;
+      if (this.kind == TokenKind.tokenStringBlock) {
+        t = new Token(this.kind, fodder, this.data(), TokenStreamReader.this.string(this.indent),
+            TokenStreamReader.this.string(this.termIndent), loc);
+      } else {
+        t = new Token(this.kind, fodder, this.data(), "", "", loc);
+      }
+      t.start = this.start;
+      t.end = this.end;
+      return t;
+    }
+  }
+}
@@ -0,0 +1,241 @@
+package com.jsonnet.lexer;
+
+import com.jsonnet.lexer.fodder.FodderElement;
+import com.jsonnet.lexer.fodder.FodderKind;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+// ---------------------------------------------------------------------------------------------------------------------
+// TokenStreamWriter encodes tokens in a compact binary format, so that they can be stored or handed to another process
+// and read back with a TokenStreamReader instead of lexing the source again. A stream holds everything the tokens are
+// made of, the source is not needed to read it back.
+//
+// A stream is made of:
+//   - a header: the magic number (4 bytes), the version and flags of the stream,
+//   - the string table: the number of strings, then each of them as its length in bytes and its chars, each char
+//     encoded on its own as in UTF-8 (1 to 3 bytes). Surrogates are encoded one by one, paired or not, so that any
+//     String (lone surrogates included) reads back as it was written. Every distinct string (token data, fodder data,
+//     indents of text blocks, file name) is stored once,
+//   - the index of the file name in the string table, the number of tokens and of fodder elements, and the length of
+//     the token section in bytes so that the fodder section can be found without decoding the tokens,
+//   - the token section, one record per token: its kind (1 byte), its offsets as deltas from the end of the previous
+//     token, the index of its data (unless its kind has fixed data) and indents (text blocks only), its lines as deltas
+//     and its columns, and the number of its fodder elements,
+//   - the fodder section, one record per fodder element, in token order: its kind (1 byte), the index of its data and
+//     its offsets as deltas from the end of the previous element.
+// All numbers but the magic number are varints (7 bits per byte, low bits first), signed deltas being zigzag-encoded.
+public class TokenStreamWriter {
+  static final int magic = 0x4a544b53; // "JTKS"
+  static final int version = 2;
+  // flagRanges is set if the offsets of the fodder elements are known, which is the case for tokens fresh from a lexer
+  // but not for tokens that were built (or detached) with their fodder elements only.
+  static final int flagRanges = 1;
+
+  private final String fileName;
+  private final Map<String, Integer> stringIndex = new HashMap<>();
+  private final List<String> strings = new ArrayList<>();
+  private final Bytes tokens = new Bytes();
+  private final Bytes fodder = new Bytes();
+  private int size; // Number of tokens added
+  private int fodderSize; // Number of fodder elements added
+  private boolean ranges = true;
+  private int prevEnd; // End offset of the previous token
+  private int prevEndLine; // End line of the previous token
+  private int prevFodderEnd; // End offset of the previous fodder element
+
+  public TokenStreamWriter(String fileName) {
+    this.fileName = fileName;
+    this.string(fileName);
+  }
+
+  // toByteArray encodes tokens, e.g. the result of Lexer.lex(), as a stream.
+  public static byte[] toByteArray(String fileName, List<Token> tokens) {
+    TokenStreamWriter writer = new TokenStreamWriter(fileName);
+    for (Token t : tokens) {
+      writer.add(t);
+    }
+    return writer.toByteArray();
+  }
+
+  // toByteArray encodes the tokens of buffer as a stream.
+  public static byte[] toByteArray(TokenBuffer buffer) {
+    TokenStreamWriter writer = new TokenStreamWriter(buffer.fileName);
+    writer.add(buffer);
+    return writer.toByteArray();
+  }
+
+  // add adds a token to the stream.
+  public void add(Token t) {
+    int count = 0;
+    if (t.fodderTable != null) {
+      FodderTable table = t.fodderTable;
+      for (int f = t.fodderStart; f < t.fodderStart + t.fodderCount; f++) {
+        this.addFodder(table.kind(f), table.source.slice(table.start(f), table.end(f)), table.start(f), table.end(f));
+      }
+      count = t.fodderCount;
+    } else if (t.getFodder() != null) {
+      for (FodderElement f : t.getFodder()) {
+        this.ranges = false; // The offsets of the element are not known
+        this.addFodder(f.fodderKind, f.data, this.prevFodderEnd, this.prevFodderEnd);
+      }
+      count = t.getFodder().size();
+    }
+    if (t.loc == null) {
+      this.addToken(t.kind, t.start, t.end, t.getData(), t.stringBlockIndent, t.stringBlockTermIndent, 0, 0, 0, 0,
+          count);
+    } else {
+      this.addToken(t.kind, t.start, t.end, t.getData(), t.stringBlockIndent, t.stringBlockTermIndent,
+          t.loc.begin().line, t.loc.begin().column, t.loc.end().line, t.loc.end().column, count);
+    }
+  }
+
+  // add adds all the tokens of buffer to the stream.
+  public void add(TokenBuffer buffer) {
+    for (TokenBuffer.Cursor c = buffer.cursor(); c.isValid(); c.next()) {
+      for (int i = 0; i < c.fodderCount(); i++) {
+        this.addFodder(c.fodderKind(i), c.fodderData(i), c.fodderStart(i), c.fodderEnd(i));
+      }
+      String[] block = c.block();
+      this.addToken(c.kind(), c.start(), c.end(), c.data(), block == null ? null : block[1],
+          block == null ? null : block[2], c.beginLine(), c.beginColumn(), c.endLine(), c.endColumn(), c.fodderCount());
+    }
+  }
+
+  private void addFodder(FodderKind kind, String data, int start, int end) {
+    this.fodder.writeByte(kind.ordinal());
+    this.fodder.writeVarint(this.string(data));
+    this.fodder.writeSigned(start - this.prevFodderEnd);
+    this.fodder.writeVarint(end - start);
+    this.prevFodderEnd = end;
+    this.fodderSize++;
+  }
+
+  private void addToken(TokenKind kind, int start, int end, String data, String stringBlockIndent,
+      String stringBlockTermIndent, int beginLine, int beginColumn, int endLine, int endColumn, int fodderCount) {
+    this.tokens.writeByte(kind.ordinal());
+    this.tokens.writeSigned(start - this.prevEnd);
+    this.tokens.writeVarint(end - start);
+    if (!kind.hasFixedData()) {
+      this.tokens.writeVarint(this.string(data));
+    }
+    if (kind == TokenKind.tokenStringBlock) {
+      this.tokens.writeVarint(this.string(stringBlockIndent));
+      this.tokens.writeVarint(this.string(stringBlockTermIndent));
+    }
+    this.tokens.writeSigned(beginLine - this.prevEndLine);
+    this.tokens.writeVarint(beginColumn);
+    this.tokens.writeVarint(endLine - beginLine);
+    this.tokens.writeVarint(endColumn);
+    this.tokens.writeVarint(fodderCount);
+    this.prevEnd = end;
+    this.prevEndLine = endLine;
+    this.size++;
+  }
+
+  // string returns the index of s in the string table, adding it if needed. A null string is stored as an empty one.
+  private int string(String s) {
+    if (s == null) {
+      s = "";
+    }
+    Integer index = this.stringIndex.get(s);
+    if (index == null) {
+      index = this.strings.size();
+      this.stringIndex.put(s, index);
+      this.strings.add(s);
+    }
+    return index;
+  }
+
+  // toByteArray returns the stream of the tokens added so far.
+  public byte[] toByteArray() {
+    Bytes out = new Bytes();
+    out.writeByte(magic >>> 24);
+    out.writeByte(magic >>> 16);
+    out.writeByte(magic >>> 8);
+    out.writeByte(magic);
+    out.writeVarint(version);
+    out.writeVarint(this.ranges ? flagRanges : 0);
+    out.writeVarint(this.strings.size());
+    for (String s : this.strings) {
+      out.writeString(s);
+    }
+    out.writeVarint(this.string(this.fileName));
+    out.writeVarint(this.size);
+    out.writeVarint(this.fodderSize);
+    out.writeVarint(this.tokens.size);
+    out.write(this.tokens.bytes, 0, this.tokens.size);
+    out.write(this.fodder.bytes, 0, this.fodder.size);
+    return Arrays.copyOf(out.bytes, out.size);
+  }
+
+  // write writes the stream of the tokens added so far to out.
+  public void write(OutputStream out) throws IOException {
+    out.write(this.toByteArray());
+  }
+
+  // -------------------------------------------------------------------------------------------------------------------
+  // Bytes is a growable array of bytes.
+  private static final class Bytes {
+    byte[] bytes = new byte[256];
+    int size;
+
+    void writeByte(int b) {
+      if (this.size == this.bytes.length) {
+        this.bytes = Arrays.copyOf(this.bytes, this.size * 2);
+      }
+      this.bytes[this.size++] = (byte) b;
+    }
+
+    void write(byte[] b, int offset, int length) {
+      if (this.size + length > this.bytes.length) {
+        this.bytes = Arrays.copyOf(this.bytes, Math.max(this.size + length, this.bytes.length * 2));
+      }
+      System.arraycopy(b, offset, this.bytes, this.size, length);
+      this.size += length;
+    }
+
+    // writeString writes s as its length in bytes followed by its chars, each of them encoded on its own in 1 to 3 bytes
+    // (see TokenStreamReader.decode).
+    void writeString(String s) {
+      int length = 0;
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+        length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+      }
+      this.writeVarint(length);
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+        if (c < 0x80) {
+          this.writeByte(c);
+        } else if (c < 0x800) {
+          this.writeByte(0xC0 | c >> 6);
+          this.writeByte(0x80 | c & 0x3F);
+        } else {
+          this.writeByte(0xE0 | c >> 12);
+          this.writeByte(0x80 | c >> 6 & 0x3F);
+          this.writeByte(0x80 | c & 0x3F);
+        }
+      }
+    }
+
+    // writeVarint writes v as an unsigned varint: 7 bits per byte, the high bit set on every byte but the last.
+    void writeVarint(int v) {
+      while ((v & ~0x7F) != 0) {
+        this.writeByte((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      this.writeByte(v);
+    }
+
+    // writeSigned writes v zigzag-encoded, so that small negative values are small varints too.
+    void writeSigned(int v) {
+      this.writeVarint((v << 1) ^ (v >> 31));
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package com.jsonnet.lexer;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+// Utf8Source is a source backed by UTF-8 encoded bytes, e.g. a file mapped in memory. Runes are decoded on the fly and
+// Strings are only created for the slices that are asked for. An invalid byte sequence decodes to one U+FFFD
+// replacement rune per byte, the same way for runes and for slices: both are decoded by runeAt.
+class Utf8Source extends Source {
+  static final int runeError = 0xFFFD;
+
+  final ByteBuffer bytes; // The bytes of the source, from index 0 to the limit
+  final byte[] array; // The array backing bytes, if it is accessible
+  final int arrayOffset; // The offset of index 0 of bytes in array
+
+  Utf8Source(ByteBuffer bytes) {
+    // Work on a slice so that absolute indexes start at 0 and the caller's position is left alone
+    this.bytes = bytes.slice();
+    this.array = this.bytes.hasArray() ? this.bytes.array() : null;
+    this.arrayOffset = this.bytes.hasArray() ? this.bytes.arrayOffset() : 0;
+  }
+
+  @Override
+  int length() {
+    return this.bytes.limit();
+  }
+
+  @Override
+  int unitAt(int offset) {
+    return this.bytes.get(offset) & 0xFF;
+  }
+
+  @Override
+  int runeAt(int offset) {
+    int b0 = this.unitAt(offset);
+    switch (this.runeLength(offset)) {
+      case 1:
+        return b0 < 0x80 ? b0 : runeError;
+      case 2:
+        return (b0 & 0x1F) << 6 | this.unitAt(offset + 1) & 0x3F;
+      case 3:
+        return (b0 & 0x0F) << 12 | (this.unitAt(offset + 1) & 0x3F) << 6 | this.unitAt(offset + 2) & 0x3F;
+      default:
+        return (b0 & 0x07) << 18 | (this.unitAt(offset + 1) & 0x3F) << 12 | (this.unitAt(offset + 2) & 0x3F) << 6
+            | this.unitAt(offset + 3) & 0x3F;
+    }
+  }
+
+  @Override
+  int runeLength(int offset) {
+    int b0 = this.unitAt(offset);
+    if (b0 < 0x80) {
+      return 1;
+    }
+    // The ranges of valid second bytes are narrower after some lead bytes, to rule out overlong encodings, surrogates
+    // and runes past U+10FFFF.
+    if (b0 >= 0xC2 && b0 <= 0xDF) {
+      return this.isContinuation(offset + 1, 0x80, 0xBF) ? 2 : 1;
+    }
+    if (b0 >= 0xE0 && b0 <= 0xEF) {
+      int lo = b0 == 0xE0 ? 0xA0 : 0x80;
+      int hi = b0 == 0xED ? 0x9F : 0xBF;
+      return this.isContinuation(offset + 1, lo, hi) && this.isContinuation(offset + 2, 0x80, 0xBF) ? 3 : 1;
+    }
+    if (b0 >= 0xF0 && b0 <= 0xF4) {
+      int lo = b0 == 0xF0 ? 0x90 : 0x80;
+      int hi = b0 == 0xF4 ? 0x8F : 0xBF;
+      return this.isContinuation(offset + 1, lo, hi) && this.isContinuation(offset + 2, 0x80, 0xBF)
+          && this.isContinuation(offset + 3, 0x80, 0xBF) ? 4 : 1;
+    }
+    return 1;
+  }
+
+  private boolean isContinuation(int offset, int lo, int hi) {
+    if (offset >= this.length()) {
+      return false;
+    }
+    int b = this.unitAt(offset);
+    return b >= lo && b <= hi;
+  }
+
+  // slice copies a run of ASCII bytes as it is, and otherwise decodes the runes with appendTo. The UTF-8 decoder of
+  // the JDK is not used on other bytes: it replaces a truncated sequence with a single U+FFFD, where runeAt has one
+  // per byte.
+  @Override
+  String slice(int start, int end) {
+    if (!this.isAscii(start, end)) {
+      StringBuilder sb = new StringBuilder(end - start); // UTF-8 decodes to at most one char per byte
+      this.appendTo(sb, start, end);
+      return sb.toString();
+    }
+    if (this.array != null) {
+      return new String(this.array, this.arrayOffset + start, end - start, StandardCharsets.US_ASCII);
+    }
+    byte[] data = new byte[end - start];
+    ByteBuffer view = this.bytes.duplicate();
+    // Through Buffer: ByteBuffer.position(int) is only there from Java 9 on, and would not link on Java 8
+    ((Buffer) view).position(start);
+    view.get(data);
+    return new String(data, StandardCharsets.US_ASCII);
+  }
+
+  private boolean isAscii(int start, int end) {
+    if (this.array != null) {
+      for (int i = this.arrayOffset + start, n = this.arrayOffset + end; i < n; i++) {
+        if (this.array[i] < 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+    for (int i = start; i < end; i++) {
+      if (this.bytes.get(i) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // appendTo decodes the runes one by one with runeAt.
+  @Override
+  void appendTo(StringBuilder sb, int start, int end) {
+    for (int offset = start; offset < end; ) {
+      int b = this.unitAt(offset);
+      if (b < 0x80) {
+        sb.append((char) b);
+        offset++;
+      } else {
+        sb.appendCodePoint(this.runeAt(offset));
+        offset += this.runeLength(offset);
+      }
+    }
+  }
+}
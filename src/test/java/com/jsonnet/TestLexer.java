@@ -2,10 +2,23 @@ package com.jsonnet;
 
 import com.google.common.collect.ImmutableList;
 import com.jsonnet.lexer.Lexer;
+import com.jsonnet.lexer.LexerOptions;
+import com.jsonnet.lexer.Operator;
 import com.jsonnet.lexer.StaticErrorException;
 import com.jsonnet.lexer.Token;
+import com.jsonnet.lexer.TokenBuffer;
+import com.jsonnet.lexer.fodder.FodderElement;
+import com.jsonnet.lexer.fodder.FodderKind;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Spliterator;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -86,17 +99,25 @@ public class TestLexer {
         new testCase("single string 'hi\\''", "'hi\\''", ImmutableList.of(Token.of(tokenStringSingle, "hi\\'")), ""),
         new testCase("single string 'hi\\nl'", "'hi\\\n'", ImmutableList.of(Token.of(tokenStringSingle, "hi\\\n")), ""),
 
+        new testCase("verbatim string @\"hi\"", "@\"hi\"", ImmutableList.of(Token.of(tokenVerbatimStringDouble, "hi")), ""),
+        new testCase("verbatim string @\"a\\b\"", "@\"a\\b\"", ImmutableList.of(Token.of(tokenVerbatimStringDouble, "a\\b")), ""),
+        new testCase("verbatim string @\"\"\"\"", "@\"\"\"\"", ImmutableList.of(Token.of(tokenVerbatimStringDouble, "\"")), ""),
+        new testCase("verbatim string @'hi'", "@'hi'", ImmutableList.of(Token.of(tokenVerbatimStringSingle, "hi")), ""),
+        new testCase("verbatim string @'it''s'", "@'it''s'", ImmutableList.of(Token.of(tokenVerbatimStringSingle, "it's")), ""),
+
         new testCase("assert", "assert", ImmutableList.of(Token.of(tokenAssert, "assert")), ""), new testCase("else", "else", ImmutableList.of(Token.of(tokenElse, "else")), ""),
         new testCase("error", "error", ImmutableList.of(Token.of(tokenError, "error")), ""), new testCase("false", "false", ImmutableList.of(Token.of(tokenFalse, "false")), ""),
         new testCase("for", "for", ImmutableList.of(Token.of(tokenFor, "for")), ""), new testCase("function", "function", ImmutableList.of(Token.of(tokenFunction, "function")), ""),
         new testCase("if", "if", ImmutableList.of(Token.of(tokenIf, "if")), ""), new testCase("import", "import", ImmutableList.of(Token.of(tokenImport, "import")), ""),
-        new testCase("importstr", "importstr", ImmutableList.of(Token.of(tokenImportStr, "importstr")), ""), new testCase("in", "in", ImmutableList.of(Token.of(tokenIn, "in")), ""),
+        new testCase("importstr", "importstr", ImmutableList.of(Token.of(tokenImportStr, "importstr")), ""), new testCase("importbin", "importbin", ImmutableList.of(Token.of(tokenImportBin, "importbin")), ""),
+        new testCase("in", "in", ImmutableList.of(Token.of(tokenIn, "in")), ""),
         new testCase("local", "local", ImmutableList.of(Token.of(tokenLocal, "local")), ""), new testCase("null", "null", ImmutableList.of(Token.of(tokenNullLit, "null")), ""),
         new testCase("self", "self", ImmutableList.of(Token.of(tokenSelf, "self")), ""), new testCase("super", "super", ImmutableList.of(Token.of(tokenSuper, "super")), ""),
         new testCase("tailstrict", "tailstrict", ImmutableList.of(Token.of(tokenTailStrict, "tailstrict")), ""), new testCase("then", "then", ImmutableList.of(Token.of(tokenThen, "then")), ""),
         new testCase("true", "true", ImmutableList.of(Token.of(tokenTrue, "true")), ""),
 
         new testCase("identifier", "foobar", ImmutableList.of(Token.of(tokenIdentifier, "foobar")), ""),
+        new testCase("keyword prefix", "importstrs", ImmutableList.of(Token.of(tokenIdentifier, "importstrs")), ""),
 
         new testCase("c++ comment", "// hi", ImmutableList.of(), ""),  // This test doesn't look at fodder (yet?)
         new testCase("hash comment", "# hi", ImmutableList.of(), ""),  // This test doesn't look at fodder (yet?)
@@ -143,6 +164,8 @@ public class TestLexer {
 
         new testCase("double string \"hi", "\"hi", ImmutableList.of(), "double string \"hi:1:1 Unterminated String"),
         new testCase("single string 'hi", "'hi", ImmutableList.of(), "single string 'hi:1:1 Unterminated String"),
+        new testCase("verbatim string @'hi", "@'hi", ImmutableList.of(), "verbatim string @'hi:1:1 Unterminated String"),
+        new testCase("verbatim string @x", "@x", ImmutableList.of(), "verbatim string @x:1:1 Couldn't lex verbatim string, junk after '@': x"),
 
         new testCase("c comment no term",
             "/* hi", ImmutableList.of(),
@@ -160,7 +183,9 @@ public class TestLexer {
             ImmutableList.of(),
             "block string no ws:1:1 Text block's first line must start with whitespace"),
 
-        new testCase("junk", "\uD83D\uDCA9", ImmutableList.of(), "junk:1:1 Could not lex the character \uD83D\uDCA9")
+        new testCase("junk", "\uD83D\uDCA9", ImmutableList.of(), "junk:1:1 Could not lex the character \uD83D\uDCA9"),
+        new testCase("non-ascii letter", "caf\u00e9", ImmutableList.of(), "non-ascii letter:1:4 Could not lex the character \u00e9"),
+        new testCase("non-ascii digit", "\u0663", ImmutableList.of(), "non-ascii digit:1:1 Could not lex the character \u0663")
     );
 
     for (testCase t: testCases) {
@@ -174,4 +199,253 @@ public class TestLexer {
       }
     }
   }
+
+  @Test
+  public void testNextToken() {
+    String input = "local x = 1.5e3; // comment\n{ a: 'b', c: |||\n  text\n|||, d: x >= 2 }";
+    List<Token> expected = new Lexer("stream", input).lex();
+
+    Lexer lexer = new Lexer("stream", input);
+    List<Token> pulled = new ArrayList<>();
+    Assert.assertEquals(lexer.peekToken().toString(), expected.get(0).toString());
+    for (Token t = lexer.nextToken(); t != null; t = lexer.nextToken()) {
+      pulled.add(t);
+    }
+    Assert.assertNull(lexer.nextToken());
+    if (!tokensEqual(pulled, expected)) {
+      Assert.fail(String.format("nextToken failed, expected: %s, got: %s", expected, pulled));
+    }
+
+    List<Token> iterated = new ArrayList<>();
+    Iterator<Token> it = new Lexer("stream", input).iterator();
+    while (it.hasNext()) {
+      iterated.add(it.next());
+    }
+    if (!tokensEqual(iterated, expected)) {
+      Assert.fail(String.format("iterator failed, expected: %s, got: %s", expected, iterated));
+    }
+
+    List<Token> split = new ArrayList<>();
+    Spliterator<Token> spliterator = new Lexer("stream", input).spliterator();
+    spliterator.forEachRemaining(split::add);
+    if (!tokensEqual(split, expected)) {
+      Assert.fail(String.format("spliterator failed, expected: %s, got: %s", expected, split));
+    }
+  }
+
+  @Test
+  public void testLexUtf8Input() throws IOException {
+    String input = "{ 'caf\u00e9': \"\uD83D\uDCA9\", /* \u65e5\u672c */ x: |||\n  \u00fcber\n||| }";
+    List<Token> expected = new Lexer("utf8", input).lex();
+    byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+
+    List<Token> fromHeap = new Lexer("utf8", ByteBuffer.wrap(bytes)).lex();
+    if (!tokensEqual(fromHeap, expected)) {
+      Assert.fail(String.format("heap buffer failed, expected: %s, got: %s", expected, fromHeap));
+    }
+
+    ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+    List<Token> fromDirect = new Lexer("utf8", direct).lex();
+    if (!tokensEqual(fromDirect, expected)) {
+      Assert.fail(String.format("direct buffer failed, expected: %s, got: %s", expected, fromDirect));
+    }
+
+    Path file = Files.createTempFile("lexer", ".jsonnet");
+    try {
+      Files.write(file, bytes);
+      List<Token> fromFile = new Lexer(file).lex();
+      if (!tokensEqual(fromFile, expected)) {
+        Assert.fail(String.format("mapped file failed, expected: %s, got: %s", expected, fromFile));
+      }
+    } finally {
+      Files.delete(file);
+    }
+
+    // Columns are counted in runes, not in bytes
+    try {
+      new Lexer("utf8", ByteBuffer.wrap("'\u00e9\u00e9' \"x".getBytes(StandardCharsets.UTF_8))).lex();
+      Assert.fail("exception expected, but succeeded");
+    } catch (StaticErrorException e) {
+      Assert.assertEquals(e.toString(), "utf8:1:6 Unterminated String");
+    }
+  }
+
+  @Test
+  public void testLazyData() {
+    List<Token> tokens = new Lexer("lazy", "local x = { a: 'b' } + [importstr 'c'];").lex();
+    for (Token t : tokens) {
+      if (t.getKind().hasFixedData()) {
+        // Symbols and keywords share the text of their kind rather than holding a copy of the source
+        Assert.assertSame(t.getData(), t.getKind().toString());
+      }
+    }
+    Assert.assertEquals(tokens.get(1).getData(), "x");
+    Assert.assertEquals(tokens.get(6).getData(), "b");
+    Assert.assertEquals(tokens.get(8).getData(), "+");
+    Assert.assertSame(tokens.get(6).getData(), tokens.get(6).getData());
+  }
+
+  @Test
+  public void testStringValues() {
+    String input = "['plain', \"tab\\t \\\"q\\\" \\u00e9\\uD83D\\uDCA9\", 'a\\/b\\\\', @'C:\\dir', |||\n  block\n|||]";
+    List<String> expected = ImmutableList.of("plain", "tab\t \"q\" \u00e9\uD83D\uDCA9", "a/b\\", "C:\\dir", "block\n");
+    for (List<Token> tokens : ImmutableList.of(new Lexer("values", input).lex(),
+        new Lexer("values", ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))).lex(),
+        new Lexer("values", input).lexToBuffer().toList())) {
+      List<String> values = new ArrayList<>();
+      for (int i = 1; i < tokens.size() - 1; i += 2) {
+        values.add(tokens.get(i).getValue());
+      }
+      Assert.assertEquals(values, expected);
+      // A literal without escapes is its own value
+      Assert.assertSame(tokens.get(1).getValue(), tokens.get(1).getData());
+    }
+
+    // An invalid escape sequence is reported when the value is asked for
+    Token invalid = new Lexer("values", "{ a: 'x\\q' }").lex().get(3);
+    Assert.assertEquals(invalid.getData(), "x\\q");
+    try {
+      invalid.getValue();
+      Assert.fail("The escape sequence should be invalid");
+    } catch (StaticErrorException e) {
+      Assert.assertEquals(e.toString(), "values:1:7-10 Invalid escape sequence in string literal: \\q");
+    }
+  }
+
+  @Test
+  public void testOperators() {
+    String input = "!a + -b * c != d <= e << 1 && f || g in h == i = j & ~k ^ l | m % n / o >= p > q >> r < s <==> u";
+    List<Token> tokens = new Lexer("operators", input).lex();
+    TokenBuffer buffer = new Lexer("operators", input).lexToBuffer();
+    List<Token> buffered = buffer.toList();
+    int operators = 0;
+    for (int i = 0; i < tokens.size(); i++) {
+      Token t = tokens.get(i);
+      if (t.getKind() == tokenOperator || t.getKind() == tokenIn) {
+        Operator op = t.getOperator();
+        if (t.getData().equals("<==>")) {
+          // A run of symbols which makes up no operator is still lexed as a single token
+          Assert.assertNull(op);
+        } else {
+          Assert.assertEquals(op.toString(), t.getData());
+          operators++;
+        }
+        Assert.assertSame(buffered.get(i).getOperator(), op);
+        Assert.assertSame(buffer.cursor().moveTo(i).operator(), op);
+        Assert.assertSame(Token.of(t.getKind(), t.getData()).getOperator(), op);
+      } else {
+        Assert.assertNull(t.getOperator());
+      }
+    }
+    Assert.assertEquals(operators, Operator.values().length);
+
+    Assert.assertTrue(Operator.opMult.precedence() < Operator.opPlus.precedence());
+    Assert.assertTrue(Operator.opAnd.precedence() < Operator.opOr.precedence());
+    Assert.assertTrue(Operator.opMinus.isUnary() && Operator.opMinus.isBinary());
+    Assert.assertFalse(Operator.opNot.isBinary() || Operator.opAssign.isBinary() || Operator.opAssign.isUnary());
+  }
+
+  @Test
+  public void testInternedIdentifiers() {
+    List<Token> a = new Lexer("a", "local std = self.std; std.length(std)").lex();
+    List<Token> b = new Lexer("b", ByteBuffer.wrap("std.length".getBytes(StandardCharsets.UTF_8))).lex();
+    Assert.assertSame(a.get(1).getData(), a.get(5).getData());
+    Assert.assertSame(a.get(1).getData(), a.get(7).getData());
+    Assert.assertSame(a.get(1).getData(), a.get(11).getData());
+    // Identifiers are shared across files and encodings as well
+    Assert.assertSame(b.get(0).getData(), a.get(1).getData());
+    Assert.assertSame(b.get(2).getData(), a.get(9).getData());
+  }
+
+  // render renders lexed tokens and their fodder back to source text. It doesn't handle text blocks, whose data is not
+  // their source text.
+  private String render(List<Token> tokens) {
+    StringBuilder sb = new StringBuilder();
+    for (Token t : tokens) {
+      for (FodderElement f : t.getFodder()) {
+        switch (f.fodderKind) {
+          case fodderWhitespace:
+            sb.append(f.data);
+            break;
+          case fodderCommentC:
+            sb.append("/*").append(f.data).append("*/");
+            break;
+          case fodderCommentCpp:
+            sb.append("//").append(f.data);
+            break;
+          case fodderCommentHash:
+            sb.append("#").append(f.data);
+            break;
+        }
+      }
+      if (t.getKind() == tokenStringDouble) {
+        sb.append('"').append(t.getData()).append('"');
+      } else if (t.getKind() == tokenStringSingle) {
+        sb.append('\'').append(t.getData()).append('\'');
+      } else if (t.getKind() != tokenEndOfFile) {
+        sb.append(t.getData());
+      }
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testFodder() {
+    String input = "  # hash\n{\t/* c\n comment */ a: 1, // cpp\n\n  b:: 'x' }  \n/**/ ";
+    List<Token> tokens = new Lexer("fodder", input).lex();
+    Assert.assertEquals(render(tokens), input);
+
+    List<FodderElement> fodder = tokens.get(0).getFodder();
+    Assert.assertEquals(fodder.size(), 3);
+    Assert.assertEquals(fodder.get(0).fodderKind, FodderKind.fodderWhitespace);
+    Assert.assertEquals(fodder.get(0).data, "  ");
+    Assert.assertEquals(fodder.get(1).fodderKind, FodderKind.fodderCommentHash);
+    Assert.assertEquals(fodder.get(1).data, " hash");
+    Assert.assertEquals(fodder.get(2).data, "\n");
+
+    fodder = tokens.get(1).getFodder();
+    Assert.assertEquals(fodder.size(), 3);
+    Assert.assertEquals(fodder.get(1).fodderKind, FodderKind.fodderCommentC);
+    Assert.assertEquals(fodder.get(1).data, " c\n comment ");
+
+    // Whitespace runs are merged into a single element, and every token keeps its own fodder
+    Assert.assertEquals(tokens.get(5).getFodder().get(2).data, "\n\n  ");
+    Assert.assertEquals(tokens.get(3).getFodder().size(), 1);
+    Assert.assertEquals(tokens.get(tokens.size() - 1).getFodder().size(), 3);
+
+    // Tokens keep their fodder when it spans several fodder tables
+    StringBuilder many = new StringBuilder();
+    for (int i = 0; i < 3000; i++) {
+      many.append(i % 7 == 0 ? "/* many */" : " x\n");
+    }
+    Assert.assertEquals(render(new Lexer("fodder", many.toString()).lex()), many.toString());
+  }
+
+  @Test
+  public void testEvaluationMode() {
+    String input = "  # hash\n{\t/* c\n comment */ a: 1, // cpp\n\n  b:: 'x' }  \n/**/ ";
+    List<Token> expected = new Lexer("eval", input).lex();
+    List<Token> tokens = new Lexer("eval", input, LexerOptions.EVALUATION).lex();
+    if (!tokensEqual(tokens, expected)) {
+      Assert.fail(String.format("evaluation mode failed, expected: %s, got: %s", expected, tokens));
+    }
+    for (Token t : tokens) {
+      Assert.assertTrue(t.getFodder().isEmpty());
+    }
+
+    // Comments are still checked, and errors are still reported at the right location
+    try {
+      new Lexer("eval", "{\n  a: 1, /* no end", LexerOptions.EVALUATION).lex();
+      Assert.fail("exception expected, but succeeded");
+    } catch (StaticErrorException e) {
+      Assert.assertEquals(e.toString(), "eval:2:9 Multi-line comment has no terminating */");
+    }
+    try {
+      new Lexer("eval", "  \n\t  1.x", LexerOptions.EVALUATION).lex();
+      Assert.fail("exception expected, but succeeded");
+    } catch (StaticErrorException e) {
+      Assert.assertEquals(e.toString(), "eval:2:6 Couldn't lex number, junk after decimal point: 'x'");
+    }
+  }
 }
@@ -0,0 +1,118 @@
+package com.jsonnet.lexer;
+
+import com.jsonnet.lexer.fodder.FodderElement;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestCharSequenceSource {
+  // Pieces of a corpus, whose strings, comments and text blocks hold runes of every width, lone surrogates included
+  static final String[] unicode = {"é", "日本", "🚀", "𝐀x", "é", "\uD800", "\uDC00", "Ω"};
+  static final String[] pieces = {"{", "}", "[ ]", ",\n  ", "local x = ", "std.length(", ") ", "a: ", "1.5e3 ", " + ",
+      "'%s' ", "\"%s \\\" q\" ", "// %s\n", "# %s\n", "/* %s\n * %s */", "|||\n  %s\n\n    %s\n |||\n", "\t\r\n"};
+
+  static String corpus(long seed, int length) {
+    Random random = new Random(seed);
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < length) {
+      String piece = pieces[random.nextInt(pieces.length)];
+      sb.append(String.format(piece, unicode[random.nextInt(unicode.length)], unicode[random.nextInt(unicode.length)]));
+    }
+    return sb.toString();
+  }
+
+  // describe describes a token without its offsets, which depend on the encoding of the source.
+  private static String describe(Token t) {
+    StringBuilder sb = new StringBuilder();
+    for (FodderElement f : t.getFodder()) {
+      sb.append(f.fodderKind).append('[').append(f.data).append(']');
+    }
+    return sb.append(t.kind).append('|').append(t.getData()).append('|').append(t.stringBlockIndent).append('|')
+        .append(t.stringBlockTermIndent).append('|').append(t.loc).toString();
+  }
+
+  private static String lex(Lexer lexer) {
+    StringBuilder sb = new StringBuilder();
+    try {
+      for (Token t : lexer.lex()) {
+        sb.append(describe(t)).append('\n');
+      }
+    } catch (StaticErrorException e) {
+      sb.append(e);
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testMixedUnicodeCorpus() {
+    for (long seed = 0; seed < 200; seed++) {
+      String text = corpus(seed, 50 + (int) (seed * 10));
+      // Truncated texts end in the middle of strings, comments and text blocks
+      for (String input : new String[]{text, text.substring(0, text.length() / 2)}) {
+        String expected = lex(new Lexer("corpus", input));
+        Assert.assertEquals(lex(new Lexer("corpus", new StringBuilder(input))), expected, input);
+        Assert.assertEquals(lex(new Lexer("corpus", CharBuffer.wrap(input))), expected, input);
+        // A UTF-8 encoding of the input only exists without lone surrogates
+        if (input.codePoints().noneMatch(c -> c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)) {
+          ByteBuffer utf8 = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+          Assert.assertEquals(lex(new Lexer("corpus", utf8)), expected, input);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testColumnsInCodePoints() {
+    for (long seed = 0; seed < 50; seed++) {
+      String input = corpus(seed, 2000);
+      List<Token> tokens;
+      try {
+        tokens = new Lexer("corpus", (CharSequence) new StringBuilder(input)).lex();
+      } catch (StaticErrorException e) {
+        continue;
+      }
+      for (Token t : tokens) {
+        // Tokens of a lexer start at the offset of their location
+        int lineStart = input.lastIndexOf('\n', t.start - 1) + 1;
+        int line = (int) input.substring(0, t.start).chars().filter(c -> c == '\n').count() + 1;
+        Assert.assertEquals(t.loc.begin().line, line);
+        Assert.assertEquals(t.loc.begin().column, input.codePointCount(lineStart, t.start) + 1);
+      }
+    }
+  }
+
+  @Test
+  public void testMalformedUtf8() {
+    // A truncated sequence, an overlong encoding, an encoded surrogate, a rune past U+10FFFF, a byte which is never
+    // valid, a valid rune and a sequence cut short by the end of the input: each invalid byte is one U+FFFD.
+    byte[] bytes = {'x', (byte) 0xE2, (byte) 0x82, 'y', (byte) 0xC0, (byte) 0xAF, (byte) 0xED, (byte) 0xA0,
+        (byte) 0x80, (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80, (byte) 0xFF, (byte) 0xC3, (byte) 0xA9,
+        (byte) 0xF0, (byte) 0x9F, (byte) 0x9A};
+    String expected = "x\uFFFD\uFFFDy\uFFFD\uFFFD\uFFFD\uFFFD\uFFFD\uFFFD\uFFFD\uFFFD\uFFFD\uFFFD\u00e9\uFFFD\uFFFD\uFFFD";
+    ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+    for (Utf8Source source : new Utf8Source[]{new Utf8Source(ByteBuffer.wrap(bytes)), new Utf8Source(direct)}) {
+      StringBuilder runes = new StringBuilder();
+      for (int offset = 0; offset < source.length(); offset += source.runeLength(offset)) {
+        runes.appendCodePoint(source.runeAt(offset));
+      }
+      StringBuilder appended = new StringBuilder();
+      source.appendTo(appended, 0, source.length());
+      Assert.assertEquals(runes.toString(), expected);
+      Assert.assertEquals(appended.toString(), expected);
+      Assert.assertEquals(source.slice(0, source.length()), expected);
+      Assert.assertEquals(source.slice(3, 4), "y");
+    }
+
+    // The data of a token is a slice, its value is appended: they agree
+    byte[] string = {'\'', 'a', (byte) 0xE2, (byte) 0x82, '\\', 'n', (byte) 0xF0, (byte) 0x9F, '\''};
+    Token t = new Lexer("utf8", ByteBuffer.wrap(string)).nextToken();
+    Assert.assertEquals(t.getData(), "a\uFFFD\uFFFD\\n\uFFFD\uFFFD");
+    Assert.assertEquals(t.getValue(), "a\uFFFD\uFFFD\n\uFFFD\uFFFD");
+  }
+}
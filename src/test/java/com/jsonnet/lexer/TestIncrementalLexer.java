@@ -0,0 +1,147 @@
+package com.jsonnet.lexer;
+
+import com.jsonnet.lexer.fodder.FodderElement;
+import java.util.List;
+import java.util.Random;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestIncrementalLexer {
+  static final String input = ""
+      + "local lib = import 'lib.libsonnet';  // lib\n"
+      + "{\n"
+      + "  /* a comment */\n"
+      + "  a: lib.f(1, 2.5e3) + [\"x\\\"\", 'y'],\n"
+      + "  # another one\n"
+      + "  b: |||\n"
+      + "    text\n"
+      + "      more\n"
+      + "  |||,\n"
+      + "  c: if self.a != null then 'héllo' else error 'no',\n"
+      + "}\n";
+
+  // describe describes a token with everything a full lex decides about it.
+  static String describe(Token t) {
+    StringBuilder sb = new StringBuilder();
+    for (FodderElement f : t.getFodder()) {
+      sb.append(f.fodderKind).append('[').append(f.data).append(']');
+    }
+    sb.append(t.kind).append('|').append(t.getData()).append('|').append(t.stringBlockIndent).append('|')
+        .append(t.stringBlockTermIndent).append('|').append(t.loc);
+    if (t.kind != TokenKind.tokenStringBlock) {
+      sb.append('|').append(t.start).append('-').append(t.end);
+    }
+    return sb.toString();
+  }
+
+  private static void assertSameTokens(List<Token> actual, String text) {
+    List<Token> expected = new Lexer("edit", text).lex();
+    Assert.assertEquals(actual.size(), expected.size(), text);
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(describe(actual.get(i)), describe(expected.get(i)), text);
+    }
+  }
+
+  @Test
+  public void testSmallEdit() {
+    IncrementalLexer lexer = new IncrementalLexer("edit", input);
+    int offset = input.indexOf("2.5e3");
+    assertSameTokens(lexer.edit(offset, 5, "42"), lexer.text());
+    // Only the edited number is lexed again, the old tokens line up again right after it
+    Assert.assertEquals(lexer.relexed, 1);
+
+    // A new line shifts the lines of the tokens after it
+    assertSameTokens(lexer.edit(offset, 0, "\n  "), lexer.text());
+    Assert.assertEquals(lexer.relexed, 1);
+  }
+
+  @Test
+  public void testMultiLineTokens() {
+    IncrementalLexer lexer = new IncrementalLexer("edit", input);
+    // Opening a comment comments out everything up to the end of the existing one
+    assertSameTokens(lexer.edit(input.indexOf("{"), 0, "/*"), lexer.text());
+    assertSameTokens(lexer.edit(input.indexOf("{"), 2, ""), lexer.text());
+    // Adding a line to the text block, and a ||| in it which doesn't end it
+    int end = lexer.text().indexOf("  |||,");
+    assertSameTokens(lexer.edit(end, 0, "    extra\n"), lexer.text());
+    assertSameTokens(lexer.edit(end + 4, 0, "|||"), lexer.text());
+    assertSameTokens(lexer.edit(end, 13, ""), input);
+  }
+
+  @Test
+  public void testLexErrors() {
+    IncrementalLexer lexer = new IncrementalLexer("edit", input);
+    int offset = input.indexOf("'y'");
+    try {
+      lexer.edit(offset + 2, 1, "");
+      Assert.fail("The text should not lex once a quote is removed");
+    } catch (StaticErrorException e) {
+      // The string goes on up to the quote of 'héllo', and what follows it does not lex
+      Assert.assertEquals(e.toString(), "edit:10:31 Could not lex the character \u00e9");
+    }
+    // The edit is kept, so closing the string again gives back the original tokens
+    assertSameTokens(lexer.edit(offset + 2, 0, "'"), input);
+    Assert.assertNull(lexer.error());
+  }
+
+  @Test
+  public void testTokensWhileTheTextDoesNotLex() {
+    IncrementalLexer lexer = new IncrementalLexer("edit", "local x = 1; x");
+    Assert.assertThrows(StaticErrorException.class, () -> lexer.edit(10, 0, "'"));
+    Assert.assertEquals(lexer.error().toString(), "edit:1:11 Unterminated String");
+    // The tokens are still those of the text which lexed last
+    assertSameTokens(lexer.tokens(), "local x = 1; x");
+    Assert.assertThrows(StaticErrorException.class, () -> lexer.edit(11, 0, "abc"));
+    assertSameTokens(lexer.edit(15, 0, "'"), "local x = 'abc1'; x");
+    Assert.assertNull(lexer.error());
+
+    // Only the part edited while the text did not lex is lexed again
+    IncrementalLexer large = new IncrementalLexer("edit", input + input + input);
+    int offset = input.length() + input.indexOf("'y'");
+    Assert.assertThrows(StaticErrorException.class, () -> large.edit(offset, 3, "'é"));
+    Assert.assertThrows(StaticErrorException.class, () -> large.edit(offset + 2, 0, "\\'"));
+    assertSameTokens(large.edit(offset + 2, 2, "'"), large.text());
+    Assert.assertEquals(large.relexed, 1);
+  }
+
+  @Test
+  public void testTextWhichDoesNotLexYet() {
+    IncrementalLexer lexer = new IncrementalLexer("edit", "local x = 'abc");
+    Assert.assertEquals(lexer.error().toString(), "edit:1:11 Unterminated String");
+    Assert.assertTrue(lexer.tokens().isEmpty());
+    assertSameTokens(lexer.edit(14, 0, "'; x"), "local x = 'abc'; x");
+    Assert.assertNull(lexer.error());
+  }
+
+  @Test
+  public void testRandomEdits() {
+    Random random = new Random(42);
+    String[] snippets = {"", " ", "\n", "x", "1", "'", "\"", "/*", "*/", "//", "#", "|||", "|||\n  ", "\n|||", "é",
+        "🚀", "local", "+", "==", "\\", "{", "}"};
+    IncrementalLexer lexer = new IncrementalLexer("edit", input);
+    for (int n = 0; n < 2000; n++) {
+      String text = lexer.text();
+      int offset = random.nextInt(text.length() + 1);
+      int deleted = random.nextInt(Math.min(4, text.length() - offset) + 1);
+      String inserted = snippets[random.nextInt(snippets.length)];
+      List<Token> tokens;
+      try {
+        tokens = lexer.edit(offset, deleted, inserted);
+      } catch (StaticErrorException e) {
+        Assert.assertSame(lexer.error(), e);
+        try {
+          new Lexer("edit", lexer.text()).lex();
+          Assert.fail("A full lex of the text should fail as well: " + lexer.text());
+        } catch (StaticErrorException expected) {
+          Assert.assertEquals(e.toString(), expected.toString());
+        }
+        continue;
+      }
+      assertSameTokens(tokens, lexer.text());
+      if (lexer.text().length() > 2 * input.length()) {
+        lexer = new IncrementalLexer("edit", input);
+      }
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.jsonnet.lexer;
+
+import com.jsonnet.lexer.fodder.FodderKind;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestLexerListener {
+  static final String input = "// héllo\n{ a: 'b', c: |||\n  🚀 text\n|||, d: [1, 2] }\n";
+
+  @Test
+  public void testStats() {
+    List<LexerStats> reported = new ArrayList<>();
+    LexerOptions options = LexerOptions.builder().listener(reported::add).build();
+    new Lexer("stats", input, options).lex();
+    new Lexer("stats.utf8", ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)), options).lexToBuffer();
+    Lexer pulled = new Lexer("stats.pulled", input, options);
+    while (pulled.nextToken() != null) {
+      Assert.assertEquals(reported.size(), pulled.done ? 3 : 2);
+    }
+
+    Assert.assertEquals(reported.size(), 3);
+    for (LexerStats stats : reported) {
+      Assert.assertEquals(stats.bytes(), input.getBytes(StandardCharsets.UTF_8).length);
+      Assert.assertEquals(stats.runes(), input.codePointCount(0, input.length()));
+      Assert.assertEquals(stats.tokens(), 18);
+      Assert.assertEquals(stats.tokens(TokenKind.tokenIdentifier), 3);
+      Assert.assertEquals(stats.tokens(TokenKind.tokenStringBlock), 1);
+      Assert.assertEquals(stats.tokens(TokenKind.tokenEndOfFile), 1);
+      Assert.assertEquals(stats.fodder(FodderKind.fodderCommentCpp), 1);
+      Assert.assertEquals(stats.fodder(), 11);
+      Assert.assertEquals(stats.largestTextBlock(), "🚀 text\n".length());
+      Assert.assertTrue(stats.nanos() > 0);
+    }
+    Assert.assertEquals(reported.get(1).fileName(), "stats.utf8");
+
+    // A lexer which fails reports nothing, nor does one which doesn't see the whole file
+    reported.clear();
+    try {
+      new Lexer("stats", "{ a: 'b", options).lex();
+      Assert.fail("The string is not terminated");
+    } catch (StaticErrorException expected) {
+      // expected
+    }
+    Lexer restarted = new Lexer("stats", new StringSource(input), options);
+    restarted.restart(input.indexOf('{'), 2, 1);
+    restarted.lex();
+    Assert.assertTrue(reported.isEmpty());
+  }
+
+  @Test
+  public void testFlightRecorderEvents() throws Exception {
+    Assert.assertTrue(Lexer.flightRecorder);
+    Path file = Files.createTempFile("lex", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("jsonnet.Lex");
+      recording.start();
+      new Lexer("recorded.jsonnet", input).lex();
+      recording.stop();
+      recording.dump(file);
+    }
+    List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+    Files.delete(file);
+    Assert.assertEquals(events.size(), 1);
+    Assert.assertEquals(events.get(0).getString("fileName"), "recorded.jsonnet");
+    Assert.assertEquals(events.get(0).getLong("size"), input.length());
+    Assert.assertFalse(events.get(0).getDuration().isNegative());
+  }
+}
@@ -0,0 +1,126 @@
+package com.jsonnet.lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestLexerPool {
+  private static String describe(List<Token> tokens) {
+    StringBuilder sb = new StringBuilder();
+    for (Token t : tokens) {
+      sb.append(TestIncrementalLexer.describe(t)).append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testReset() {
+    String a = TestIncrementalLexer.input;
+    String b = "local x = { a: 'é' };\n// comment\nx";
+    Lexer lexer = new Lexer("a", a);
+    List<Token> tokensA = lexer.lex();
+    lexer.reset("b", b);
+    List<Token> tokensB = lexer.lex();
+    // The tokens of the previous input keep their data, fodder and locations
+    Assert.assertEquals(describe(tokensA), describe(new Lexer("a", a).lex()));
+    Assert.assertEquals(describe(tokensB), describe(new Lexer("b", b).lex()));
+
+    // A reset in the middle of an input drops what is left of it
+    lexer.reset("a", a);
+    lexer.nextToken();
+    lexer.reset("b", b);
+    Assert.assertEquals(describe(lexer.lex()), describe(tokensB));
+  }
+
+  @Test
+  public void testIdentifierTableTrimmed() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < 10000; i++) {
+      sb.append("id").append(i).append(", ");
+    }
+    Lexer lexer = new Lexer("large", sb.append("]").toString());
+    lexer.lex();
+    Assert.assertTrue(lexer.identifiers.capacity() > IdentifierTable.maxRetainedSlots);
+    lexer.reset("small", "{ a: b }");
+    Assert.assertEquals(lexer.identifiers.capacity(), 64);
+    Assert.assertEquals(lexer.lex().get(1).getData(), "a");
+  }
+
+  @Test
+  public void testBuffersReused() {
+    String a = TestIncrementalLexer.input;
+    String b = "local x = { a: 'é' };\n// comment\nx";
+    LexerPool pool = new LexerPool();
+    Assert.assertEquals(lex(() -> pool.lexToBuffer("a", a).toList()), describe(new Lexer("a", a).lex()));
+    Lexer lexer = pool.lexer();
+    LineIndex lines = lexer.lines;
+    FodderTable fodder = lexer.fodder;
+    Assert.assertNull(lines.source);
+    Assert.assertNull(fodder.source);
+    // Nothing refers to the line index and the fodder table of an input lexed to a buffer, the next input reuses them
+    Assert.assertEquals(lex(() -> pool.lexToBuffer("b", b).toList()), describe(new Lexer("b", b).lex()));
+    Assert.assertSame(lexer.lines, lines);
+    Assert.assertSame(lexer.fodder, fodder);
+    // The tokens of a list do refer to them, the next input gets new ones
+    List<Token> tokens = pool.lex("a", a);
+    Assert.assertEquals(lex(() -> pool.lexToBuffer("b", b).toList()), describe(new Lexer("b", b).lex()));
+    Assert.assertNotSame(lexer.lines, lines);
+    Assert.assertEquals(describe(tokens), describe(new Lexer("a", a).lex()));
+    // So does an error
+    lines = lexer.lines;
+    Assert.assertThrows(StaticErrorException.class, () -> pool.lexToBuffer("error", "'a"));
+    pool.lexToBuffer("b", b);
+    Assert.assertNotSame(lexer.lines, lines);
+
+    // The arrays of a large input are not kept for the next one
+    String large = new String(new char[LineIndex.maxRetainedLines + 1]).replace("\0", "x\n");
+    Assert.assertEquals(pool.lexToBuffer("large", large).size(), LineIndex.maxRetainedLines + 2);
+    Assert.assertEquals(lex(() -> pool.lexToBuffer("b", b).toList()), describe(new Lexer("b", b).lex()));
+    Assert.assertTrue(lexer.lines.capacity() < LineIndex.maxRetainedLines);
+  }
+
+  @Test
+  public void testThreads() throws Exception {
+    LexerPool pool = new LexerPool(LexerOptions.EVALUATION);
+    List<String> inputs = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      inputs.add(TestCharSequenceSource.corpus(i, 500));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (String input : inputs) {
+        results.add(executor.submit(() -> {
+          String tokens = lex(() -> pool.lex("pool", input));
+          // The lexer of the thread is back in the pool, without its input, and is used again
+          Lexer lexer = pool.lexer();
+          Assert.assertNotNull(lexer);
+          Assert.assertNull(lexer.source);
+          Assert.assertEquals(lex(() -> pool.lexToBuffer("pool", input).toList()), tokens);
+          Assert.assertSame(pool.lexer(), lexer);
+          return tokens;
+        }));
+      }
+      for (int i = 0; i < inputs.size(); i++) {
+        String input = inputs.get(i);
+        Assert.assertEquals(results.get(i).get(), lex(() -> new Lexer("pool", input, LexerOptions.EVALUATION).lex()));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static String lex(Supplier<List<Token>> lex) {
+    try {
+      return describe(lex.get());
+    } catch (StaticErrorException e) {
+      return e.toString();
+    }
+  }
+}
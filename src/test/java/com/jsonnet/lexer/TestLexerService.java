@@ -0,0 +1,91 @@
+package com.jsonnet.lexer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestLexerService {
+  @Test
+  public void testLexTree() throws IOException {
+    Path root = Files.createTempDirectory("lexer-service");
+    Files.createDirectories(root.resolve("vendor/lib"));
+    for (int i = 0; i < 50; i++) {
+      String text = "local x = " + i + ";  // file " + i + "\n{ a: x, b: 'héllo' }\n";
+      Files.write(root.resolve(i % 2 == 0 ? "f" + i + ".jsonnet" : "vendor/lib/f" + i + ".libsonnet"),
+          text.getBytes(StandardCharsets.UTF_8));
+    }
+    Files.write(root.resolve("vendor/broken.libsonnet"), "{ a: 'b }".getBytes(StandardCharsets.UTF_8));
+    Files.write(root.resolve("vendor/README.md"), "not jsonnet `".getBytes(StandardCharsets.UTF_8));
+
+    // getTaskCount() of the executor is only approximate, the tasks submitted are counted exactly instead
+    AtomicInteger submitted = new AtomicInteger();
+    ExecutorService executor = new ThreadPoolExecutor(4, 4, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()) {
+      @Override
+      public void execute(Runnable command) {
+        submitted.incrementAndGet();
+        super.execute(command);
+      }
+    };
+    try (LexerService service = LexerService.builder().executor(executor).maxInFlight(3).build()) {
+      int files = 0;
+      int errors = 0;
+      for (Iterator<LexerService.Result> it = service.lexTree(root); it.hasNext(); ) {
+        LexerService.Result result = it.next();
+        // Files are only submitted as results are taken
+        Assert.assertTrue(submitted.get() - files <= 3);
+        files++;
+        if (!result.isSuccess()) {
+          errors++;
+          Assert.assertTrue(result.path().endsWith("vendor/broken.libsonnet"));
+          Assert.assertTrue(result.error() instanceof StaticErrorException);
+          Assert.assertEquals(result.error().toString(), result.path() + ":1:6 Unterminated String");
+          continue;
+        }
+        List<Token> expected = new Lexer(result.path()).lex();
+        Assert.assertEquals(result.tokens().toString(), expected.toString());
+      }
+      Assert.assertEquals(files, 51);
+      Assert.assertEquals(errors, 1);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(timeOut = 10000)
+  public void testErrorInTask() throws IOException {
+    Path root = Files.createTempDirectory("lexer-service");
+    for (String name : new String[]{"a.jsonnet", "boom.jsonnet", "c.jsonnet"}) {
+      Files.write(root.resolve(name), "{ a: 1 }".getBytes(StandardCharsets.UTF_8));
+    }
+    // The task of a file throws an Error, which is not an Exception: the file still gets its result
+    LexerOptions options = LexerOptions.builder().listener(stats -> {
+      if (stats.fileName().endsWith("boom.jsonnet")) {
+        throw new AssertionError("boom");
+      }
+    }).build();
+    try (LexerService service = LexerService.builder().options(options).maxInFlight(1).build()) {
+      int files = 0;
+      for (Iterator<LexerService.Result> it = service.lexTree(root); it.hasNext(); files++) {
+        LexerService.Result result = it.next();
+        if (result.path().endsWith("boom.jsonnet")) {
+          Assert.assertTrue(result.error() instanceof AssertionError);
+          Assert.assertThrows(AssertionError.class, result::tokens);
+        } else {
+          Assert.assertEquals(result.tokens().size(), 6);
+        }
+      }
+      Assert.assertEquals(files, 3);
+    }
+  }
+}
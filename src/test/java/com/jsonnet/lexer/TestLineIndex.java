@@ -0,0 +1,56 @@
+package com.jsonnet.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestLineIndex {
+  static final String input = "{\n  a: 'héllo', b: '🚀🚀', c: 1,\n  d: 2 }";
+
+  @Test
+  public void testWideLines() {
+    // Columns are in runes whatever the code units of the source
+    String expected = "[lex:1:1-2, lex:2:3-4, lex:2:4-5, lex:2:7-12, lex:2:13-14, lex:2:15-16, lex:2:16-17, lex:2:19-21, "
+        + "lex:2:22-23, lex:2:24-25, lex:2:25-26, lex:2:27-28, lex:2:28-29, lex:3:3-4, lex:3:4-5, lex:3:6-7, lex:3:8-9, "
+        + "lex:3:9]";
+    List<Token> tokens = new Lexer("lex", input).lex();
+    Assert.assertEquals(locations(tokens), expected);
+    ByteBuffer utf8 = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals(locations(new Lexer("lex", utf8).lex()), expected);
+
+    // Columns can be asked for in any order
+    LineIndex lines = index(input);
+    int offset = input.indexOf("c:");
+    Assert.assertEquals(lines.column(offset), 24);
+    Assert.assertEquals(lines.column(input.indexOf("b:")), 15);
+    Assert.assertEquals(lines.column(offset), 24);
+    Assert.assertEquals(lines.line(offset), 2);
+  }
+
+  @Test
+  public void testRestart() {
+    // An index which starts in the middle of a line counts columns from the column it starts at
+    Lexer lexer = new Lexer("lex", new StringSource(input), LexerOptions.DEFAULT);
+    int offset = input.indexOf(" c:");
+    lexer.restart(offset, 2, 23);
+    Assert.assertEquals(lexer.nextToken().loc.toString(), "lex:2:24-25");
+    Assert.assertEquals(lexer.nextToken().loc.toString(), "lex:2:25-26");
+  }
+
+  private static LineIndex index(String input) {
+    Lexer lexer = new Lexer("lex", input);
+    lexer.lex();
+    return lexer.lines;
+  }
+
+  private static String locations(List<Token> tokens) {
+    StringBuilder sb = new StringBuilder("[");
+    for (Token t : tokens) {
+      sb.append(sb.length() > 1 ? ", " : "").append(t.loc);
+    }
+    return sb.append(']').toString();
+  }
+}
@@ -0,0 +1,81 @@
+package com.jsonnet.lexer;
+
+import java.util.List;
+import java.util.Random;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestNumberParser {
+  static final String[] cases = {
+      "0", "1", "0.5", "1e3", "1.5e3", "1E+3", "1e-3", "0.000123", "8080", "9007199254740992", "9007199254740993",
+      "9007199254740995", "1e22", "1e23", "123456789012345678901234567890", "0.1", "0.3", "2.2250738585072011e-308",
+      "2.2250738585072014e-308", "4.9e-324", "2.4703282292062327e-324", "2.4703282292062328e-324", "1e-400", "1e400",
+      "1.7976931348623157e308", "1.7976931348623158e308", "1.7976931348623159e308", "0e12", "0.0e-5",
+      "18446744073709551615", "18446744073709551616", "9999999999999999999", "99999999999999999999e-20",
+      "7.3177701707893310e15", "1e99999999999", "1e-99999999999", "4503599627370496.5", "4503599627370497.5"};
+
+  private static double parse(String literal) {
+    return NumberParser.parse(new StringSource(literal), 0, literal.length());
+  }
+
+  private static void assertParses(String literal) {
+    long expected = Double.doubleToRawLongBits(Double.parseDouble(literal));
+    Assert.assertEquals(Double.doubleToRawLongBits(parse(literal)), expected, literal);
+    // The lexer works the value out while it scans the literal, into the token and into the buffer
+    Token t = new Lexer("number", literal).nextToken();
+    Assert.assertEquals(Double.doubleToRawLongBits(t.number), expected, literal);
+    Assert.assertEquals(Double.doubleToRawLongBits(new Lexer("number", literal).lexToBuffer().cursor().number()),
+        expected, literal);
+  }
+
+  @Test
+  public void testCases() {
+    for (String literal : cases) {
+      assertParses(literal);
+    }
+  }
+
+  @Test
+  public void testRandomLiterals() {
+    Random random = new Random(42);
+    for (int n = 0; n < 200000; n++) {
+      StringBuilder sb = new StringBuilder();
+      int digits = 1 + random.nextInt(n % 3 == 0 ? 30 : 17);
+      sb.append(1 + random.nextInt(9));
+      for (int i = 1; i < digits; i++) {
+        sb.append(random.nextInt(10));
+      }
+      if (random.nextBoolean()) {
+        sb.insert(1 + random.nextInt(sb.length()), '.');
+        if (sb.charAt(sb.length() - 1) == '.') {
+          sb.append('0');
+        }
+      }
+      if (random.nextBoolean()) {
+        sb.append(random.nextBoolean() ? 'e' : 'E').append(random.nextBoolean() ? "-" : "").append(random.nextInt(330));
+      }
+      assertParses(sb.toString());
+    }
+    // Random doubles are printed with the shortest digits that round trip, which are close to halfway cases
+    for (int n = 0; n < 100000; n++) {
+      double d = Double.longBitsToDouble(random.nextLong() & Long.MAX_VALUE);
+      if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+        assertParses(Double.toString(d).replace("E", "e"));
+      }
+    }
+  }
+
+  @Test
+  public void testTokens() {
+    String input = "{ port: 8080, replicas: 3, cpu: 0.25, big: 1.5e300 }";
+    List<Token> tokens = new Lexer("numbers", input).lex();
+    Assert.assertEquals(tokens.get(3).getNumber(), 8080.0);
+    Assert.assertEquals(tokens.get(7).getNumber(), 3.0);
+    Assert.assertEquals(tokens.get(11).getNumber(), 0.25);
+    Assert.assertEquals(tokens.get(15).getNumber(), 1.5e300);
+    TokenBuffer.Cursor c = new Lexer("numbers", input).lexToBuffer().cursor().moveTo(11);
+    Assert.assertEquals(c.number(), 0.25);
+    Assert.assertEquals(Token.of(TokenKind.tokenNumber, "1e-3").getNumber(), 1e-3);
+  }
+}
@@ -0,0 +1,120 @@
+package com.jsonnet.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestParallelLexer {
+  private static final ForkJoinPool pool = new ForkJoinPool(4);
+
+  private static void assertSameTokens(List<Token> actual, List<Token> expected) {
+    Assert.assertEquals(actual.size(), expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(TestIncrementalLexer.describe(actual.get(i)), TestIncrementalLexer.describe(expected.get(i)));
+    }
+  }
+
+  // input builds a file where strings, comments and text blocks span many lines, so that chunks often start inside
+  // them.
+  private static String input(int size) {
+    Random random = new Random(7);
+    StringBuilder sb = new StringBuilder("{\n");
+    while (sb.length() < size) {
+      switch (random.nextInt(5)) {
+        case 0:
+          sb.append("  a: 'line\n  // not a comment\n  /* still a string\n',\n");
+          break;
+        case 1:
+          sb.append("  /*\n  b: 'commented out',\n  |||\n  */\n");
+          break;
+        case 2:
+          sb.append("  c: |||\n    x = \"y\n    /* z\n  |||,\n");
+          break;
+        case 3:
+          sb.append("  d: \"héllo\\\"\n  wörld 🚀\",  # comment 'e'\n");
+          break;
+        default:
+          sb.append("  f: [1, 2.5e3, true, null] + self.g,\n");
+      }
+    }
+    return sb.append("}\n").toString();
+  }
+
+  @Test
+  public void testSameTokens() {
+    String in = input(20000);
+    List<Token> expected = new Lexer("parallel", in).lex();
+    for (int chunkSize : new int[]{1, 7, 64, 1000, 1 << 20}) {
+      assertSameTokens(new ParallelLexer("parallel", in, LexerOptions.DEFAULT, chunkSize).lex(pool), expected);
+    }
+    ByteBuffer utf8 = ByteBuffer.wrap(in.getBytes(StandardCharsets.UTF_8));
+    assertSameTokens(new ParallelLexer("parallel", utf8, LexerOptions.DEFAULT, 100).lex(pool),
+        new Lexer("parallel", utf8).lex());
+  }
+
+  // lex describes the tokens of lexer, or the error it fails with.
+  private static String lex(Supplier<List<Token>> lexer) {
+    StringBuilder sb = new StringBuilder();
+    try {
+      for (Token t : lexer.get()) {
+        sb.append(TestIncrementalLexer.describe(t)).append('\n');
+      }
+    } catch (StaticErrorException e) {
+      sb.append(e);
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testEndsInTextBlock() {
+    // The re-lexed stream ends with its EOF token where a speculative token of the chunk ends
+    String in = "a\n|||\n  x\n|||/**/";
+    for (int chunkSize = 1; chunkSize <= 30; chunkSize++) {
+      assertSameTokens(new ParallelLexer("parallel", in, LexerOptions.DEFAULT, chunkSize).lex(pool),
+          new Lexer("parallel", in).lex());
+    }
+  }
+
+  @Test
+  public void testCorpus() {
+    for (long seed = 0; seed < 100; seed++) {
+      String text = TestCharSequenceSource.corpus(seed, 50 + (int) (seed * 5));
+      // Truncated texts end in the middle of strings, comments and text blocks, others in fodder after a text block
+      String[] inputs = {text, text.substring(0, text.length() / 2), text + "\n|||\n  x\n|||/**/"};
+      for (String in : inputs) {
+        String expected = lex(() -> new Lexer("parallel", in).lex());
+        for (int chunkSize : new int[]{1, 2, 3, 5, 8, 13, 30, 100}) {
+          Assert.assertEquals(lex(() -> new ParallelLexer("parallel", in, LexerOptions.DEFAULT, chunkSize).lex(pool)),
+              expected, in);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testErrors() {
+    // The chunk starting at the second line fails speculatively, but the right stream goes past it
+    String in = "local a = '\n'x;\nlocal b = 1;\n";
+    assertSameTokens(new ParallelLexer("parallel", in, LexerOptions.DEFAULT, 4).lex(pool),
+        new Lexer("parallel", in).lex());
+
+    in = input(5000) + "  h: ` ,\n" + input(5000);
+    try {
+      new ParallelLexer("parallel", in, LexerOptions.DEFAULT, 100).lex(pool);
+      Assert.fail("The input should not lex");
+    } catch (StaticErrorException e) {
+      try {
+        new Lexer("parallel", in).lex();
+        Assert.fail("The input should not lex");
+      } catch (StaticErrorException expected) {
+        Assert.assertEquals(e.toString(), expected.toString());
+      }
+    }
+  }
+}
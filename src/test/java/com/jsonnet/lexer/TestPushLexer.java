@@ -0,0 +1,158 @@
+package com.jsonnet.lexer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestPushLexer {
+  private static String describe(List<Token> tokens) {
+    StringBuilder sb = new StringBuilder();
+    for (Token t : tokens) {
+      sb.append(TestIncrementalLexer.describe(t)).append('\n');
+    }
+    return sb.toString();
+  }
+
+  // push feeds input to lexer in chunks of random sizes, draining the tokens after each of them.
+  private static String push(PushLexer lexer, String input, Random random, int maxChunk) {
+    byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+    List<Token> tokens = new ArrayList<>();
+    try {
+      for (int i = 0; i < bytes.length; ) {
+        int length = Math.min(bytes.length - i, 1 + random.nextInt(maxChunk));
+        lexer.feed(bytes, i, length);
+        i += length;
+        tokens.addAll(lexer.drainTokens());
+      }
+      lexer.endOfInput();
+      tokens.addAll(lexer.drainTokens());
+    } catch (StaticErrorException e) {
+      return describe(tokens) + e;
+    }
+    return describe(tokens);
+  }
+
+  private static String lex(String input) {
+    List<Token> tokens = new ArrayList<>();
+    Lexer lexer = new Lexer("corpus", input);
+    try {
+      for (Token t = lexer.nextToken(); t != null; t = lexer.nextToken()) {
+        tokens.add(t);
+      }
+    } catch (StaticErrorException e) {
+      return describe(tokens) + e;
+    }
+    return describe(tokens);
+  }
+
+  @Test
+  public void testCorpus() {
+    Random random = new Random(0);
+    for (long seed = 0; seed < 200; seed++) {
+      String text = TestCharSequenceSource.corpus(seed, 50 + (int) (seed * 10));
+      // Truncated texts end in the middle of strings, comments and text blocks
+      for (String input : new String[]{text, text.substring(0, text.length() / 2)}) {
+        // Only a UTF-8 encoding of the input can be pushed, which lone surrogates don't have
+        if (input.codePoints().anyMatch(c -> c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)) {
+          continue;
+        }
+        String expected = lex(input);
+        // Chunks of a few bytes split runes, tokens and fodder everywhere
+        for (int maxChunk : new int[]{1, 5, 100}) {
+          LexerOptions options = LexerOptions.builder().bufferSize(16).build();
+          Assert.assertEquals(push(new PushLexer("corpus", options), input, random, maxChunk), expected, input);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTokensAsSoonAsComplete() {
+    PushLexer lexer = new PushLexer("chunks");
+    lexer.feed("{ a: 1, bc".getBytes(StandardCharsets.UTF_8));
+    // The identifier at the end of the chunk may go on in the next one
+    Assert.assertEquals(lexer.drainTokens().size(), 5);
+    lexer.feed("d: 'é".getBytes(StandardCharsets.UTF_8));
+    List<Token> tokens = lexer.drainTokens();
+    Assert.assertEquals(tokens.size(), 2);
+    Assert.assertEquals(tokens.get(0).getData(), "bcd");
+    lexer.feed("' }".getBytes(StandardCharsets.UTF_8));
+    tokens = lexer.drainTokens();
+    Assert.assertEquals(tokens.size(), 2);
+    Assert.assertEquals(tokens.get(0).getData(), "é");
+    Assert.assertEquals(tokens.get(1).getFodder().size(), 1);
+    lexer.endOfInput();
+    tokens = lexer.drainTokens();
+    Assert.assertEquals(tokens.size(), 1);
+    Assert.assertEquals(tokens.get(0).getKind(), TokenKind.tokenEndOfFile);
+    Assert.assertTrue(lexer.drainTokens().isEmpty());
+    Assert.assertThrows(IllegalStateException.class, () -> lexer.feed(new byte[1]));
+  }
+
+  @Test
+  public void testLongTokensAsSoonAsComplete() {
+    PushLexer lexer = new PushLexer("chunks");
+    StringBuilder block = new StringBuilder("x: |||\n");
+    for (int i = 0; i < 1000; i++) {
+      block.append("  line ").append(i).append('\n');
+    }
+    lexer.feed(block.toString().getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals(lexer.drainTokens().size(), 2);
+    // The tokens after the text block are not held back by its length
+    lexer.feed("|||, y: 1, z: 2, w: 3 ".getBytes(StandardCharsets.UTF_8));
+    List<Token> tokens = lexer.drainTokens();
+    Assert.assertEquals(tokens.size(), 13);
+    Assert.assertEquals(tokens.get(0).getKind(), TokenKind.tokenStringBlock);
+    Assert.assertEquals(tokens.get(12).getData(), "3");
+    for (int i = 0; i < 50; i++) {
+      lexer.feed((", a" + i + ": " + i + " ").getBytes(StandardCharsets.UTF_8));
+      Assert.assertEquals(lexer.drainTokens().size(), 4);
+    }
+    // Strings and comments spanning many chunks come out once they end, whatever they hold
+    lexer.feed(", s: '".getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals(lexer.drainTokens().size(), 3);
+    for (int i = 0; i < 50; i++) {
+      lexer.feed("*/ \\".getBytes(StandardCharsets.UTF_8));
+      Assert.assertTrue(lexer.drainTokens().isEmpty());
+      lexer.feed("' ".getBytes(StandardCharsets.UTF_8));
+      Assert.assertTrue(lexer.drainTokens().isEmpty());
+    }
+    lexer.feed("' /* a ' |||\n".getBytes(StandardCharsets.UTF_8));
+    tokens = lexer.drainTokens();
+    Assert.assertEquals(tokens.size(), 1);
+    Assert.assertEquals(tokens.get(0).getData().length(), 300);
+    for (int i = 0; i < 50; i++) {
+      lexer.feed("* / ' |||\n".getBytes(StandardCharsets.UTF_8));
+      Assert.assertTrue(lexer.drainTokens().isEmpty());
+    }
+    lexer.feed("*/ }".getBytes(StandardCharsets.UTF_8));
+    tokens = lexer.drainTokens();
+    Assert.assertEquals(tokens.size(), 1);
+    Assert.assertEquals(tokens.get(0).getKind(), TokenKind.tokenBraceR);
+    Assert.assertEquals(tokens.get(0).getFodder().size(), 3);
+    lexer.endOfInput();
+    Assert.assertEquals(lexer.drainTokens().size(), 1);
+  }
+
+  @Test
+  public void testStats() {
+    List<LexerStats> reported = new ArrayList<>();
+    LexerOptions options = LexerOptions.builder().listener(reported::add).build();
+    String input = TestLexerListener.input;
+    new Lexer("stats", input, options).lex();
+    // Fodder lexed again after the input ran out is not counted twice
+    push(new PushLexer("stats.pushed", options), input, new Random(0), 3);
+    Assert.assertEquals(reported.size(), 2);
+    LexerStats lexed = reported.get(0);
+    LexerStats pushed = reported.get(1);
+    Assert.assertEquals(pushed.bytes(), lexed.bytes());
+    Assert.assertEquals(pushed.runes(), lexed.runes());
+    Assert.assertEquals(pushed.tokens(), lexed.tokens());
+    Assert.assertEquals(pushed.fodder(), lexed.fodder());
+    Assert.assertEquals(pushed.largestTextBlock(), lexed.largestTextBlock());
+  }
+}
@@ -0,0 +1,90 @@
+package com.jsonnet.lexer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestReaderSource {
+  // A reader which hands out at most a few chars per read, as a pipe or a socket may.
+  private static Reader trickle(String input, int chars) {
+    return new StringReader(input) {
+      @Override
+      public int read(char[] buf, int off, int len) throws IOException {
+        return super.read(buf, off, Math.min(len, chars));
+      }
+    };
+  }
+
+  private static String lex(Lexer lexer) {
+    StringBuilder sb = new StringBuilder();
+    try {
+      for (Token t = lexer.nextToken(); t != null; t = lexer.nextToken()) {
+        sb.append(TestIncrementalLexer.describe(t)).append('\n');
+      }
+    } catch (StaticErrorException e) {
+      sb.append(e);
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testCorpus() {
+    for (long seed = 0; seed < 200; seed++) {
+      String text = TestCharSequenceSource.corpus(seed, 50 + (int) (seed * 10));
+      // Truncated texts end in the middle of strings, comments and text blocks
+      for (String input : new String[]{text, text.substring(0, text.length() / 2)}) {
+        String expected = lex(new Lexer("corpus", input));
+        // Tiny windows make every token and every piece of fodder run over the end of the window
+        for (int size : new int[]{1, 7, 64}) {
+          LexerOptions options = LexerOptions.builder().bufferSize(size).build();
+          Assert.assertEquals(lex(new Lexer("corpus", trickle(input, 3), options)), expected, input);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testChannel() {
+    String input = "{\n  a: 'é 日本 🚀',\n  b: |||\n    text ✓\n  |||,\n} // done\n";
+    byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+    Lexer lexer = new Lexer("channel", Channels.newChannel(new ByteArrayInputStream(bytes)),
+        LexerOptions.builder().bufferSize(4).build());
+    Assert.assertEquals(lex(lexer), lex(new Lexer("channel", input)));
+  }
+
+  @Test
+  public void testBoundedWindow() {
+    StringBuilder sb = new StringBuilder("[\n");
+    for (int i = 0; i < 100000; i++) {
+      sb.append("  { name: 'item").append(i).append("', value: ").append(i).append(" }, // é\n");
+    }
+    String input = sb.append("]\n").toString();
+    Lexer lexer = new Lexer("large", new StringReader(input), LexerOptions.builder().bufferSize(256).build());
+    int tokens = 0;
+    for (Token t = lexer.nextToken(); t != null; t = lexer.nextToken()) {
+      tokens++;
+    }
+    Assert.assertEquals(tokens, new Lexer("large", input).lex().size());
+    // No token is longer than the window, it never had to grow
+    Assert.assertEquals(lexer.stream.capacity(), 256);
+
+    // A token longer than the window makes it grow to hold it
+    String block = "|||\n" + new String(new char[1000]).replace("\0", "  long line\n") + "|||\n";
+    lexer = new Lexer("block", new StringReader(block + block), LexerOptions.builder().bufferSize(256).build());
+    Assert.assertEquals(lexer.nextToken().getData().length(), 10000);
+    Assert.assertEquals(lexer.nextToken().loc.begin().line, 1003);
+    Assert.assertTrue(lexer.stream.capacity() >= 10000);
+  }
+
+  @Test
+  public void testNotToBuffer() {
+    Lexer lexer = new Lexer("stream", new StringReader("{}"));
+    Assert.assertThrows(IllegalStateException.class, lexer::lexToBuffer);
+  }
+}
@@ -0,0 +1,82 @@
+package com.jsonnet.lexer;
+
+import com.jsonnet.lexer.fodder.FodderKind;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static com.jsonnet.lexer.TokenKind.*;
+
+
+public class TestTokenBuffer {
+  static final String input = "local x = 1;  // one\n{ a: x, 'b': |||\n  text\n|||, c: [\"d\\\"\"] }\n";
+
+  @Test
+  public void testBufferMatchesTokens() {
+    List<Token> expected = new Lexer("buffer", input).lex();
+    TokenBuffer buffer = new Lexer("buffer", input).lexToBuffer();
+
+    Assert.assertEquals(buffer.size(), expected.size());
+    List<Token> tokens = buffer.toList();
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(tokens.get(i).toString(), expected.get(i).toString());
+      Assert.assertEquals(buffer.token(i).toString(), expected.get(i).toString());
+    }
+  }
+
+  @Test
+  public void testCursor() {
+    TokenBuffer buffer = new Lexer("buffer", input).lexToBuffer();
+    TokenBuffer.Cursor c = buffer.cursor();
+
+    Assert.assertEquals(c.kind(), tokenLocal);
+    Assert.assertEquals(c.data(), "local");
+    Assert.assertEquals(c.beginLine(), 1);
+    Assert.assertEquals(c.beginColumn(), 1);
+    Assert.assertEquals(c.endColumn(), 6);
+    Assert.assertEquals(c.fodderCount(), 0);
+
+    // '{' is preceded by the comment and the whitespace around it
+    c.moveTo(5);
+    Assert.assertEquals(c.kind(), tokenBraceL);
+    Assert.assertEquals(c.beginLine(), 2);
+    Assert.assertEquals(c.fodderCount(), 3);
+    Assert.assertEquals(c.fodderKind(0), FodderKind.fodderWhitespace);
+    Assert.assertEquals(c.fodderData(0), "  ");
+    Assert.assertEquals(c.fodderKind(1), FodderKind.fodderCommentCpp);
+    Assert.assertEquals(c.fodderData(1), " one");
+    Assert.assertEquals(c.fodderData(2), "\n");
+
+    int blocks = 0;
+    for (c.moveTo(0); c.isValid(); c.next()) {
+      if (c.kind() == tokenStringBlock) {
+        Assert.assertEquals(c.data(), "text\n");
+        blocks++;
+      }
+    }
+    Assert.assertEquals(blocks, 1);
+    Assert.assertEquals(c.index(), buffer.size());
+    Assert.assertEquals(c.moveTo(buffer.size() - 1).kind(), tokenEndOfFile);
+  }
+
+  @Test
+  public void testNumbers() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < 100; i++) {
+      sb.append(i * 1.25).append("e").append(i % 7).append(i % 3 == 0 ? " + x, " : ", ");
+    }
+    TokenBuffer buffer = new Lexer("buffer", sb.append("]").toString()).lexToBuffer();
+    List<Token> tokens = buffer.toList();
+    int numbers = 0;
+    for (TokenBuffer.Cursor c = buffer.cursor(); c.isValid(); c.next()) {
+      if (c.kind() == tokenNumber) {
+        Assert.assertEquals(c.number(), Double.parseDouble(c.data()));
+        Assert.assertEquals(tokens.get(c.index()).number, Double.parseDouble(c.data()));
+        numbers++;
+      } else {
+        Assert.assertTrue(Double.isNaN(tokens.get(c.index()).number));
+      }
+    }
+    Assert.assertEquals(numbers, 100);
+  }
+}
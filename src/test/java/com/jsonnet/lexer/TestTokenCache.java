@@ -0,0 +1,82 @@
+package com.jsonnet.lexer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestTokenCache {
+  static final String input = "local x = 1;  // one\n{ a: x, 'b': |||\n  téxt\n|||, c: [\"d\\\"\"] }\n";
+
+  private static void assertSameTokens(TokenBuffer actual, List<Token> expected) {
+    List<Token> tokens = actual.toList();
+    Assert.assertEquals(tokens.size(), expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(TestIncrementalLexer.describe(tokens.get(i)), TestIncrementalLexer.describe(expected.get(i)));
+    }
+  }
+
+  private static List<Path> entries(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void testHitsAndMisses() throws IOException {
+    Path directory = Files.createTempDirectory("token-cache");
+    TokenCache cache = new TokenCache(directory);
+    List<Token> expected = new Lexer("cache", input).lex();
+
+    assertSameTokens(cache.lex("cache", input), expected);
+    assertSameTokens(cache.lex("cache", input), expected);
+    Assert.assertEquals(cache.misses.get(), 1);
+    Assert.assertEquals(cache.hits.get(), 1);
+
+    // Another cache on the same directory, e.g. in another process, shares the entries
+    TokenCache other = new TokenCache(directory);
+    assertSameTokens(other.lex("cache", input), expected);
+    Assert.assertEquals(other.hits.get(), 1);
+
+    // The options and the encoding of the source are part of the key
+    other.lex("cache", input, LexerOptions.EVALUATION);
+    Path file = directory.resolve("input.jsonnet");
+    Files.write(file, input.getBytes(StandardCharsets.UTF_8));
+    assertSameTokens(other.lex(file), new Lexer(file).lex());
+    assertSameTokens(other.lex(file), new Lexer(file).lex());
+    Assert.assertEquals(other.misses.get(), 2);
+    Assert.assertEquals(other.hits.get(), 2);
+    Assert.assertEquals(entries(directory).size(), 4);
+  }
+
+  @Test
+  public void testBrokenEntries() throws IOException {
+    Path directory = Files.createTempDirectory("token-cache");
+    TokenCache cache = new TokenCache(directory);
+    List<Token> expected = new Lexer("cache", input).lex();
+    cache.lex("cache", input);
+    Path entry = entries(directory).get(0);
+
+    // A truncated entry is lexed and written again
+    byte[] bytes = Files.readAllBytes(entry);
+    Files.write(entry, Arrays.copyOf(bytes, bytes.length / 2));
+    assertSameTokens(cache.lex("cache", input), expected);
+    Assert.assertEquals(cache.misses.get(), 2);
+    Assert.assertTrue(Arrays.equals(Files.readAllBytes(entry), bytes));
+
+    // So is an entry of another version
+    bytes[7]++;
+    Files.write(entry, bytes);
+    assertSameTokens(cache.lex("cache", input), expected);
+    Assert.assertEquals(cache.misses.get(), 3);
+    assertSameTokens(cache.lex("cache", input), expected);
+    Assert.assertEquals(cache.hits.get(), 1);
+  }
+}
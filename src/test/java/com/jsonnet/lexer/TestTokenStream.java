@@ -0,0 +1,97 @@
+package com.jsonnet.lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestTokenStream {
+  private static void assertSameTokens(List<Token> actual, List<Token> expected) {
+    Assert.assertEquals(actual.size(), expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(TestIncrementalLexer.describe(actual.get(i)), TestIncrementalLexer.describe(expected.get(i)));
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    String input = TestIncrementalLexer.input;
+    byte[] stream = TokenStreamWriter.toByteArray("stream", new Lexer("stream", input).lex());
+    TokenStreamReader reader = TokenStreamReader.open(ByteBuffer.wrap(stream));
+    Assert.assertEquals(reader.fileName(), "stream");
+    assertSameTokens(reader.toList(), new Lexer("stream", input).lex());
+
+    // A buffer gives the same stream, and the stream gives back the buffer over the source
+    TokenBuffer buffer = new Lexer("stream", input).lexToBuffer();
+    Assert.assertTrue(Arrays.equals(TokenStreamWriter.toByteArray(buffer), stream));
+    assertSameTokens(reader.toBuffer("stream", new StringSource(input)).toList(), buffer.toList());
+  }
+
+  @Test
+  public void testUnpairedSurrogates() throws IOException {
+    // A String may hold lone surrogates, which have no UTF-8 encoding, next to runes of every width
+    String input = "{ a: '\uD800 x \uDC00', b: 'é日🚀', c: '\uDC00\uD800' } // \uDBFF\n";
+    List<Token> expected = new Lexer("stream", input).lex();
+    byte[] stream = TokenStreamWriter.toByteArray("stream", expected);
+    assertSameTokens(TokenStreamReader.open(ByteBuffer.wrap(stream)).toList(), expected);
+    Assert.assertEquals(TokenStreamReader.open(ByteBuffer.wrap(stream)).toList().get(3).getData(), "\uD800 x \uDC00");
+  }
+
+  @Test
+  public void testMappedFile() throws IOException {
+    Path file = Files.createTempFile("tokens", ".stream");
+    List<Token> expected = new Lexer("stream", TestIncrementalLexer.input).lex();
+    Files.write(file, TokenStreamWriter.toByteArray("stream", expected));
+    TokenStreamReader reader = TokenStreamReader.open(file);
+
+    TokenStreamReader.Cursor c = reader.cursor();
+    for (Token t : expected) {
+      Assert.assertTrue(c.next());
+      Assert.assertEquals(c.kind(), t.kind);
+      Assert.assertEquals(c.data(), t.getData());
+      Assert.assertEquals(c.fodderCount(), t.getFodder().size());
+      Assert.assertEquals(c.beginLine(), t.loc.begin().line);
+      Assert.assertEquals(c.endColumn(), t.loc.end().column);
+    }
+    Assert.assertFalse(c.next());
+  }
+
+  @Test
+  public void testBuiltTokens() throws IOException {
+    // Tokens which don't come from a lexer have no offsets for their fodder, they can't be put over a source
+    List<Token> tokens = new IncrementalLexer("stream", TestIncrementalLexer.input).tokens();
+    TokenStreamReader reader = TokenStreamReader.open(ByteBuffer.wrap(TokenStreamWriter.toByteArray("stream", tokens)));
+    assertSameTokens(reader.toList(), tokens);
+    try {
+      reader.toBuffer("stream", new StringSource(TestIncrementalLexer.input));
+      Assert.fail("The fodder offsets should not be known");
+    } catch (IllegalStateException expected) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testBrokenStreams() {
+    byte[] stream = TokenStreamWriter.toByteArray("stream", new Lexer("stream", TestIncrementalLexer.input).lex());
+    for (byte[] broken : new byte[][]{new byte[0], Arrays.copyOf(stream, 20), "not a stream".getBytes()}) {
+      try {
+        TokenStreamReader.open(ByteBuffer.wrap(broken));
+        Assert.fail("The stream should not open");
+      } catch (IOException | RuntimeException expected) {
+        // expected
+      }
+    }
+    stream[4]++;
+    try {
+      TokenStreamReader.open(ByteBuffer.wrap(stream));
+      Assert.fail("The stream is of another version");
+    } catch (IOException expected) {
+      Assert.assertEquals(expected.getMessage(), "Unsupported token stream version 3, expected 2");
+    }
+  }
+}